@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.gravitee.fetcher.api.Fetcher;
+import io.gravitee.fetcher.api.Resource;
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the decoding of a GitHub contents API response, from the received body to the {@link Resource}: JSON
+ * parsing, metadata mapping and base64 decoding of the line-wrapped content. The {@code legacyParse} benchmark is the
+ * baseline: the tree based decoding the fetcher used before {@link ContentsParser}. Run it with the GC profiler
+ * ({@code -prof gc}, the default of the {@code benchmarks} profile) to get the allocation rate.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ContentsParserBenchmark {
+
+    /**
+     * Size of the file, before base64 encoding: 1 KB, 64 KB, 1 MB (the largest file GitHub inlines), 10 MB and 50 MB.
+     */
+    @Param({"1024", "65536", "1048576", "10485760", "52428800"})
+    private int size;
+
+    private ObjectMapper mapper;
+    private ContentsParser parser;
+    private Buffer body;
+
+    @Setup
+    public void setup() {
+        final byte[] file = new byte[size];
+        new Random(size).nextBytes(file);
+        // GitHub wraps the base64 content every 60 characters
+        final String content = Base64.getMimeEncoder(60, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(file) + '\n';
+
+        mapper = new ObjectMapper();
+        parser = new ContentsParser(mapper);
+        body = Buffer.buffer("{"
+                + "\"name\":\"README.md\","
+                + "\"path\":\"docs/README.md\","
+                + "\"sha\":\"3d21ec53a331a6f037a91c368710b99387d012c1\","
+                + "\"size\":" + size + ","
+                + "\"url\":\"https://api.github.com/repos/owner/repo/contents/docs/README.md?ref=master\","
+                + "\"html_url\":\"https://github.com/owner/repo/blob/master/docs/README.md\","
+                + "\"type\":\"file\","
+                + "\"content\":\"" + content.replace("\n", "\\n") + "\","
+                + "\"encoding\":\"base64\","
+                + "\"_links\":{\"self\":\"https://api.github.com/repos/owner/repo/contents/docs/README.md?ref=master\"}"
+                + "}");
+    }
+
+    @Benchmark
+    public Resource parse() throws IOException {
+        return parser.parse(body);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Resource legacyParse() throws IOException {
+        final Resource resource = new Resource();
+        final JsonNode jsonNode = mapper.readTree(body.getBytes());
+        final Map<String, Object> metadata = mapper.convertValue(jsonNode, Map.class);
+        final Object content = metadata.remove("content");
+        if (content != null) {
+            final String contentAsBase64 = String.valueOf(content).replaceAll("\\n", "");
+            resource.setContent(new ByteArrayInputStream(Base64.getDecoder().decode(contentAsBase64)));
+        }
+        metadata.put(Fetcher.PROVIDER_NAME_PROPERTY_KEY, "GitHub");
+        resource.setMetadata(metadata);
+        return resource;
+    }
+
+    @Benchmark
+    public byte[] parseAndRead() throws IOException {
+        final InputStream content = parser.parse(body).getContent();
+        final byte[] bytes = new byte[content.available()];
+        int read = 0;
+        while (read < bytes.length) {
+            read += content.read(bytes, read, bytes.length - read);
+        }
+        return bytes;
+    }
+}
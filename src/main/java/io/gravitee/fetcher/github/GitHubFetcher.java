@@ -15,18 +15,47 @@
  */
 package io.gravitee.fetcher.github;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.gravitee.common.http.HttpStatusCode;
 import io.gravitee.fetcher.api.Resource;
 import io.gravitee.fetcher.api.Fetcher;
 import io.gravitee.fetcher.api.FetcherException;
+import io.gravitee.fetcher.github.cache.CommitContentCache;
+import io.gravitee.fetcher.github.cache.ConditionalCache;
+import io.gravitee.fetcher.github.cache.DiskContentStore;
+import io.gravitee.fetcher.github.cache.RedirectCache;
+import io.gravitee.fetcher.github.cache.RepositoryHeadCache;
+import io.gravitee.fetcher.github.content.BlobsQuery;
+import io.gravitee.fetcher.github.content.ContentSpool;
+import io.gravitee.fetcher.github.content.ContentsParser;
+import io.gravitee.fetcher.github.content.PathFilter;
+import io.gravitee.fetcher.github.content.TarballReader;
+import io.gravitee.fetcher.github.content.Tree;
+import io.gravitee.fetcher.github.http.CircuitBreaker;
+import io.gravitee.fetcher.github.http.ConnectionWarmer;
+import io.gravitee.fetcher.github.http.Exchange;
+import io.gravitee.fetcher.github.http.HttpClientRegistry;
+import io.gravitee.fetcher.github.http.LatencyTracker;
+import io.gravitee.fetcher.github.http.RateLimitScheduler;
+import io.gravitee.fetcher.github.http.RateLimitScheduler.Priority;
+import io.gravitee.fetcher.github.http.RetryPolicy;
+import io.gravitee.fetcher.github.http.SingleFlight;
+import io.gravitee.fetcher.github.metrics.FetcherMetrics;
+import io.gravitee.fetcher.github.metrics.MetricsRegistry;
+import io.gravitee.fetcher.github.vertx.ReadStreamInputStream;
 import io.gravitee.fetcher.github.vertx.VertxCompletableFuture;
+import io.gravitee.fetcher.github.webhook.WebhookReceiver;
+import io.netty.buffer.ByteBufInputStream;
 import io.vertx.core.Future;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.*;
 import io.vertx.core.http.impl.HttpUtils;
+import io.vertx.core.net.JdkSSLEngineOptions;
+import io.vertx.core.net.JksOptions;
+import io.vertx.core.net.OpenSSLEngineOptions;
+import io.vertx.core.net.PemTrustOptions;
+import io.vertx.core.net.PfxOptions;
 import io.vertx.core.net.ProxyOptions;
 import io.vertx.core.net.ProxyType;
 import org.slf4j.Logger;
@@ -35,10 +64,39 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 
 /**
  * @author Nicolas GERAUD (nicolas.geraud at graviteesource.com) 
@@ -49,6 +107,16 @@ public class GitHubFetcher implements Fetcher {
     private static final Logger logger = LoggerFactory.getLogger(GitHubFetcher.class);
     private static final String HTTPS_SCHEME = "https";
     private static final String VERSION_HEADER = "application/vnd.github.v3+json";
+    private static final String RAW_VERSION_HEADER = "application/vnd.github.v3.raw";
+    private static final String SHA_VERSION_HEADER = "application/vnd.github.v3.sha";
+    private static final Pattern COMMIT_SHA_PATTERN = Pattern.compile("[0-9a-fA-F]{40}");
+    private static final String JSON_MEDIA_TYPE = "application/json";
+    private static final String NO_ENCODING = "none";
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final long ARCHIVE_HIGH_WATER_MARK = 1024 * 1024;
+    private static final String GITHUB_API_HOST = "api.github.com";
+    private static final String GITHUB_ENTERPRISE_API_PATH = "/api/v3";
+    private static final SingleFlight<String, ConditionalCache.Entry> inFlightFetches = new SingleFlight<>();
     private GitHubFetcherConfiguration gitHubFetcherConfiguration;
 
     @Autowired
@@ -58,6 +126,82 @@ public class GitHubFetcher implements Fetcher {
 
     @Value("${httpClient.timeout:10000}")
     private int httpClientTimeout;
+    @Value("${httpClient.maxPoolSize:10}")
+    private int httpClientMaxPoolSize = 10;
+    @Value("${httpClient.idleTimeout:60}")
+    private int httpClientIdleTimeout = 60;
+    @Value("${httpClient.retry.maxRetries:2}")
+    private int httpClientRetryMaxRetries = 2;
+    @Value("${httpClient.retry.initialDelay:200}")
+    private long httpClientRetryInitialDelay = 200;
+    @Value("${httpClient.retry.maxDelay:5000}")
+    private long httpClientRetryMaxDelay = 5_000;
+    @Value("${httpClient.retry.deadline:30000}")
+    private long httpClientRetryDeadline = 30_000;
+    @Value("${httpClient.fetchTimeout:60000}")
+    private long httpClientFetchTimeout = 60_000;
+    @Value("${httpClient.circuitBreaker.enabled:true}")
+    private boolean circuitBreakerEnabled = true;
+    @Value("${httpClient.circuitBreaker.windowSize:20}")
+    private int circuitBreakerWindowSize = 20;
+    @Value("${httpClient.circuitBreaker.minimumCalls:10}")
+    private int circuitBreakerMinimumCalls = 10;
+    @Value("${httpClient.circuitBreaker.failureRateThreshold:50}")
+    private int circuitBreakerFailureRateThreshold = 50;
+    @Value("${httpClient.circuitBreaker.slowCallDuration:5000}")
+    private long circuitBreakerSlowCallDuration = 5_000;
+    @Value("${httpClient.circuitBreaker.slowCallRateThreshold:80}")
+    private int circuitBreakerSlowCallRateThreshold = 80;
+    @Value("${httpClient.circuitBreaker.openDuration:30000}")
+    private long circuitBreakerOpenDuration = 30_000;
+    @Value("${httpClient.hedging.enabled:false}")
+    private boolean httpClientHedging;
+    @Value("${httpClient.compression:true}")
+    private boolean httpClientCompression = true;
+    @Value("${httpClient.http2.enabled:false}")
+    private boolean httpClientHttp2Enabled;
+    @Value("${httpClient.http2.maxPoolSize:1}")
+    private int httpClientHttp2MaxPoolSize = 1;
+    @Value("${httpClient.http2.multiplexingLimit:100}")
+    private int httpClientHttp2MultiplexingLimit = 100;
+    @Value("${httpClient.spoolThreshold:2097152}")
+    private long httpClientSpoolThreshold = 2 * 1024 * 1024;
+    @Value("${httpClient.maxConcurrentDownloads:8}")
+    private int httpClientMaxConcurrentDownloads = 8;
+    @Value("${httpClient.conditionalCache.maxSize:67108864}")
+    private long conditionalCacheMaxSize = 64 * 1024 * 1024;
+    @Value("${httpClient.refFreshness:10000}")
+    private long refFreshness = 10_000;
+    @Value("${httpClient.redirectCache.ttl:86400000}")
+    private long redirectCacheTtl = 86_400_000;
+    @Value("${httpClient.warmup.enabled:false}")
+    private boolean warmupEnabled;
+    @Value("${httpClient.warmup.connections:2}")
+    private int warmupConnections = 2;
+    @Value("${httpClient.ssl.trustAll:false}")
+    private boolean sslTrustAll;
+    @Value("${httpClient.ssl.truststore.type:jks}")
+    private String sslTruststoreType = "jks";
+    @Value("${httpClient.ssl.truststore.path:#{null}}")
+    private String sslTruststorePath;
+    @Value("${httpClient.ssl.truststore.password:#{null}}")
+    private String sslTruststorePassword;
+    @Value("${httpClient.ssl.openssl:false}")
+    private boolean sslOpenSsl;
+    @Value("${contentStore.path:#{null}}")
+    private String contentStorePath;
+    @Value("${contentStore.maxSize:268435456}")
+    private long contentStoreMaxSize = 256 * 1024 * 1024;
+    @Value("${webhook.enabled:false}")
+    private boolean webhookEnabled;
+    @Value("${webhook.host:0.0.0.0}")
+    private String webhookHost = "0.0.0.0";
+    @Value("${webhook.port:8091}")
+    private int webhookPort = 8091;
+    @Value("${webhook.path:/github/webhook}")
+    private String webhookPath = "/github/webhook";
+    @Value("${webhook.secret:#{null}}")
+    private String webhookSecret;
     @Value("${httpClient.proxy.type:HTTP}")
     private String httpClientProxyType;
 
@@ -79,40 +223,626 @@ public class GitHubFetcher implements Fetcher {
     @Value("${httpClient.proxy.https.password:#{null}}")
     private String httpClientProxyHttpsPassword;
 
+    private final CommitContentCache commitContentCache = CommitContentCache.getInstance();
+    private final RepositoryHeadCache repositoryHeadCache = RepositoryHeadCache.getInstance();
+    private final RedirectCache redirectCache = RedirectCache.getInstance();
+    private final AtomicBoolean webhookRegistered = new AtomicBoolean();
+    // The webhook receiver only holds its listeners weakly, the registration lasts as long as this fetcher
+    private WebhookReceiver.Listener webhookListener;
+
     public GitHubFetcher(GitHubFetcherConfiguration cfg) {
         this.gitHubFetcherConfiguration = cfg;
     }
 
     @Override
     public Resource fetch() throws FetcherException {
-        checkRequiredFields();
         try {
-            Buffer buffer = fetchContent().join();
-            final Resource resource = new Resource();
-            if (buffer == null || buffer.length() == 0) {
-                logger.warn("Something goes wrong, GitHub responds with a status 200 but the content is empty.");
+            return await(fetchAsync().toCompletableFuture());
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+            throw new FetcherException("Unable to fetch GitHub content (" + ex.getMessage() + ")", ex);
+        }
+    }
+
+    /**
+     * Wait for an asynchronous fetch, at most {@code httpClient.fetchTimeout} ms: once the rate limit budget is
+     * exhausted, requests may otherwise wait until its reset.
+     */
+    private <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get(httpClientFetchTimeout, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ee) {
+            throw ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+        } catch (TimeoutException te) {
+            future.cancel(false);
+            throw new TimeoutException("No response from GitHub after " + httpClientFetchTimeout + " ms");
+        }
+    }
+
+    /**
+     * Fetch the configured file without blocking the calling thread. The response is parsed and decoded on a
+     * worker thread, so this method can safely be called from an event loop.
+     *
+     * @return the fetched resource
+     */
+    public CompletionStage<Resource> fetchAsync() {
+        final CompletableFuture<Resource> failure = new VertxCompletableFuture<>(vertx);
+        try {
+            checkRequiredFields();
+        } catch (FetcherException fe) {
+            failure.completeExceptionally(fe);
+            return failure;
+        }
+        if (webhookRegistered.compareAndSet(false, true)) {
+            registerWebhook();
+        }
+
+        final String accept = gitHubFetcherConfiguration.isFetchRaw() ? RAW_VERSION_HEADER : VERSION_HEADER;
+        return getContentStore().thenCompose(contentStore -> resolveCommitSha()
+                .thenCompose(sha -> {
+                    // Contents are stored under the URL they are fetched from, at the resolved commit if any
+                    final String url = sha == null ? getRequestUrl() : getRequestUrl(sha);
+                    final String cacheKey = getCacheKey(url, accept);
+                    final DiskContentStore.Entry stored = contentStore == null || getConditionalCache().get(cacheKey) != null
+                            ? null : contentStore.lookup(cacheKey);
+                    if (stored != null && sha != null) {
+                        // The content of a path at a given commit never changes, there is no need to revalidate it
+                        logger.debug("Content of {} at commit {} is stored", gitHubFetcherConfiguration.getFilepath(), sha);
+                        MetricsRegistry.get().recordCache(getMetricsTags(url), FetcherMetrics.CacheResult.HIT);
+                        return VertxCompletableFuture.supplyBlockingAsync(vertx, () -> readStoredContent(contentStore, stored));
+                    } else if (stored != null) {
+                        return revalidateStoredContent(contentStore, stored, url, accept);
+                    }
+                    return fetchCommitContent(sha, accept).thenCompose(response -> VertxCompletableFuture.supplyBlockingAsync(vertx,
+                            () -> store(contentStore, cacheKey, response, toResource(accept, response))));
+                })
+                .thenCompose(resource -> {
+                    final Map<String, Object> metadata = resource.getMetadata();
+                    if (metadata != null && NO_ENCODING.equals(metadata.get("encoding")) && metadata.get("sha") != null) {
+                        // Files over 1 MB are not inlined by the contents API, download them from the Git blobs API instead
+                        logger.debug("Content of {} is too large to be inlined, fetching it from its blob", gitHubFetcherConfiguration.getFilepath());
+                        return fetchBlob(String.valueOf(metadata.get("sha")), contentStore)
+                                .thenApply(content -> {
+                                    resource.setContent(content);
+                                    return resource;
+                                });
+                    }
+                    return CompletableFuture.completedFuture(resource);
+                }));
+    }
+
+    /**
+     * Fetch the configured file at the given commit, or at the configured ref if the commit is {@code null}. Contents
+     * are cached by commit SHA, so that once the ref is resolved (with a conditional request, usually answered by a
+     * 304), an unchanged file is served without any further call. A ref which is already a full commit SHA is never
+     * resolved, other refs are resolved only when enabled in the configuration, and at most once every
+     * {@code httpClient.refFreshness} ms for a given repository.
+     */
+    private CompletableFuture<ConditionalCache.Entry> fetchCommitContent(String sha, String accept) {
+        if (sha == null) {
+            return fetchResponse(getRequestUrl(), accept, Priority.HIGH);
+        }
+        final String cacheKey = getCommitUrl(sha) + '|' + gitHubFetcherConfiguration.getFilepath() + '|' + accept + '|' + getCredentialKey();
+        final ConditionalCache.Entry cached = commitContentCache.get(cacheKey);
+        if (cached != null) {
+            logger.debug("Content of {} at commit {} is already known", gitHubFetcherConfiguration.getFilepath(), sha);
+            MetricsRegistry.get().recordCache(getMetricsTags(getRequestUrl(sha)), FetcherMetrics.CacheResult.HIT);
+            return CompletableFuture.completedFuture(cached);
+        }
+        return fetchResponse(getRequestUrl(sha), accept, Priority.HIGH).thenApply(response -> {
+            if (response.getBody() != null) {
+                commitContentCache.put(cacheKey, response);
+            }
+            return response;
+        });
+    }
+
+    /**
+     * Fetch the content of a Git blob. Since a blob never changes, it is cached by SHA: in memory if it is below the
+     * spool threshold, in the content store otherwise (if enabled). Blobs above the spool threshold are only read from
+     * their temporary or stored file, and never buffered in the heap.
+     */
+    private CompletableFuture<InputStream> fetchBlob(String sha, DiskContentStore contentStore) {
+        final String url = getBlobUrl(sha);
+        final String cacheKey = url + '|' + getCredentialKey();
+        final ConditionalCache.Entry cached = commitContentCache.get(cacheKey);
+        if (cached != null) {
+            logger.debug("Content of blob {} is already known", sha);
+            MetricsRegistry.get().recordCache(getMetricsTags(url), FetcherMetrics.CacheResult.HIT);
+            return CompletableFuture.completedFuture(new ByteBufInputStream(cached.getBody().getByteBuf()));
+        }
+        if (contentStore != null && contentStore.contains(sha)) {
+            logger.debug("Content of blob {} is stored", sha);
+            MetricsRegistry.get().recordCache(getMetricsTags(url), FetcherMetrics.CacheResult.HIT);
+            return VertxCompletableFuture.supplyBlockingAsync(vertx, () -> readBlob(contentStore, sha));
+        }
+        return fetchSpooledContent(url, RAW_VERSION_HEADER, Priority.HIGH).thenCompose(content ->
+                VertxCompletableFuture.supplyBlockingAsync(vertx, () -> cacheBlob(sha, cacheKey, contentStore, content)));
+    }
+
+    private InputStream cacheBlob(String sha, String cacheKey, DiskContentStore contentStore, InputStream content) {
+        try {
+            // A spooled content knows its size, whether it is held in memory or in a temporary file
+            if (content.available() <= Math.min(httpClientSpoolThreshold, commitContentCache.getMaxSize())) {
+                final Buffer buffer = Buffer.buffer(Math.max(32, content.available()));
+                final byte[] chunk = new byte[8192];
+                int n;
+                while ((n = content.read(chunk)) > 0) {
+                    buffer.appendBytes(chunk, 0, n);
+                }
+                closeQuietly(content);
+                commitContentCache.put(cacheKey, new ConditionalCache.Entry(null, null, buffer));
+                return new ByteBufInputStream(buffer.getByteBuf());
+            }
+            if (contentStore == null) {
+                return content;
+            }
+            final boolean stored = contentStore.putBlob(sha, content);
+            closeQuietly(content);
+            if (!stored) {
+                throw new IOException("Content of blob " + sha + " does not match its SHA");
+            }
+            return contentStore.read(sha);
+        } catch (IOException ioe) {
+            closeQuietly(content);
+            throw new CompletionException(ioe);
+        }
+    }
+
+    private static InputStream readBlob(DiskContentStore contentStore, String sha) {
+        try {
+            return contentStore.read(sha);
+        } catch (IOException ioe) {
+            throw new CompletionException(ioe);
+        }
+    }
+
+    /**
+     * Resolve the configured ref to a commit SHA, or {@code null} if it can not (or must not) be resolved, in which
+     * case the ref is used as is.
+     */
+    private CompletableFuture<String> resolveCommitSha() {
+        final String ref = gitHubFetcherConfiguration.getBranchOrTag();
+        if (ref != null && COMMIT_SHA_PATTERN.matcher(ref).matches()) {
+            return CompletableFuture.completedFuture(ref.toLowerCase());
+        }
+        if (!gitHubFetcherConfiguration.isResolveRef()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // The head is checked once per repository and ref, and shared by every file fetched meanwhile
+        final String commitUrl = getCommitUrl(ref);
+        final String headKey = getCacheKey(commitUrl, SHA_VERSION_HEADER);
+        final String head = repositoryHeadCache.get(headKey, refFreshness);
+        if (head != null) {
+            logger.debug("Head of {} is fresh, no need to check it", commitUrl);
+            return CompletableFuture.completedFuture(head);
+        }
+        return fetchContent(commitUrl, SHA_VERSION_HEADER, Priority.HIGH)
+                .handle((buffer, throwable) -> {
+                    final String sha = buffer == null ? null : buffer.toString().trim();
+                    if (throwable != null || sha == null || !COMMIT_SHA_PATTERN.matcher(sha).matches()) {
+                        logger.debug("Unable to resolve ref {} to a commit SHA, fetching content with the ref", ref);
+                        repositoryHeadCache.remove(headKey);
+                        return null;
+                    }
+                    repositoryHeadCache.put(headKey, sha);
+                    return sha;
+                });
+    }
+
+    /**
+     * Revalidate a file known by the content store, with the validators of the response it was stored from. This is
+     * how a restarted node gets its contents back: if the file has not been modified, it is read from disk.
+     */
+    private CompletableFuture<Resource> revalidateStoredContent(DiskContentStore contentStore, DiskContentStore.Entry stored,
+                                                                String url, String accept) {
+        final FetcherMetrics metrics = MetricsRegistry.get();
+        final FetcherMetrics.Tags tags = getMetricsTags(url);
+
+        return this.<Resource>send(HttpMethod.GET, url, accept, Priority.HIGH, null, request -> {
+            if (stored.getEtag() != null) {
+                request.putHeader(HttpHeaders.IF_NONE_MATCH, stored.getEtag());
+            }
+            if (stored.getLastModified() != null) {
+                request.putHeader(HttpHeaders.IF_MODIFIED_SINCE, stored.getLastModified());
+            }
+        }, (response, future) -> {
+            if (response.statusCode() == HttpStatusCode.OK_200) {
+                metrics.recordCache(tags, FetcherMetrics.CacheResult.MISS);
+                response.bodyHandler(buffer -> {
+                    final ConditionalCache.Entry fetched = new ConditionalCache.Entry(response.getHeader(HttpHeaders.ETAG),
+                            response.getHeader(HttpHeaders.LAST_MODIFIED), buffer);
+                    getConditionalCache().put(stored.getKey(), fetched.getEtag(), fetched.getLastModified(), buffer);
+                    VertxCompletableFuture.supplyBlockingAsync(vertx,
+                            () -> store(contentStore, stored.getKey(), fetched, toResource(accept, fetched)))
+                            .whenComplete(complete(future));
+                });
+            } else if (response.statusCode() == HttpStatusCode.NOT_MODIFIED_304) {
+                logger.debug("Content of '{}' has not been modified, use the stored one", url);
+                metrics.recordCache(tags, FetcherMetrics.CacheResult.REVALIDATED);
+                response.bodyHandler(buffer -> VertxCompletableFuture.supplyBlockingAsync(vertx,
+                        () -> readStoredContent(contentStore, stored)).whenComplete(complete(future)));
+            } else {
+                response.bodyHandler(buffer -> future.completeExceptionally(unexpectedStatus(url, response)));
+            }
+        }).handle((resource, throwable) -> {
+            if (throwable instanceof CircuitBreaker.OpenException) {
+                // While GitHub is unreachable, the stored content is better than nothing
+                metrics.recordCache(tags, FetcherMetrics.CacheResult.HIT);
+                return VertxCompletableFuture.supplyBlockingAsync(vertx, () -> readStoredContent(contentStore, stored));
+            }
+            final CompletableFuture<Resource> revalidated = new CompletableFuture<>();
+            complete(revalidated).accept(resource, throwable);
+            return revalidated;
+        }).thenCompose(Function.identity());
+    }
+
+    private Resource readStoredContent(DiskContentStore contentStore, DiskContentStore.Entry stored) {
+        final Resource resource = new Resource();
+        try {
+            resource.setContent(contentStore.read(stored.getSha()));
+        } catch (IOException ioe) {
+            throw new CompletionException(ioe);
+        }
+        resource.setMetadata(new HashMap<>(stored.getMetadata()));
+        return resource;
+    }
+
+    /**
+     * Keep a parsed file in the content store, if enabled, along with the validators of the response it has been
+     * parsed from. Failing to store a file does not fail the fetch.
+     */
+    private Resource store(DiskContentStore contentStore, String cacheKey, ConditionalCache.Entry validators, Resource resource) {
+        final Map<String, Object> metadata = resource.getMetadata();
+        if (contentStore == null || metadata == null || metadata.get("sha") == null
+                || NO_ENCODING.equals(metadata.get("encoding")) || resource.getContent() == null
+                || !resource.getContent().markSupported()) {
+            return resource;
+        }
+        if (validators.getEtag() == null && validators.getLastModified() == null) {
+            return resource;
+        }
+        try {
+            final InputStream content = resource.getContent();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(32, content.available()));
+            content.mark(Integer.MAX_VALUE);
+            final byte[] chunk = new byte[8192];
+            int n;
+            while ((n = content.read(chunk)) > 0) {
+                bytes.write(chunk, 0, n);
+            }
+            content.reset();
+            contentStore.put(cacheKey, String.valueOf(metadata.get("sha")), validators.getEtag(),
+                    validators.getLastModified(), metadata, bytes.toByteArray());
+        } catch (IOException ioe) {
+            logger.warn("Unable to store content of {}", gitHubFetcherConfiguration.getFilepath(), ioe);
+        }
+        return resource;
+    }
+
+    private ConditionalCache getConditionalCache() {
+        return ConditionalCache.getInstance(conditionalCacheMaxSize);
+    }
+
+    /**
+     * Get the content store, if enabled. It is loaded from disk on a worker thread the first time it is used.
+     */
+    private CompletableFuture<DiskContentStore> getContentStore() {
+        if (contentStorePath == null || contentStorePath.trim().isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final Path directory = Paths.get(contentStorePath);
+        final DiskContentStore contentStore = DiskContentStore.getIfOpen(directory);
+        if (contentStore != null) {
+            return CompletableFuture.completedFuture(contentStore);
+        }
+        return VertxCompletableFuture.supplyBlockingAsync(vertx, () -> DiskContentStore.open(mapper, directory, contentStoreMaxSize));
+    }
+
+    private static <T> BiConsumer<T, Throwable> complete(CompletableFuture<T> future) {
+        return (result, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable);
             } else {
-                JsonNode jsonNode = mapper.readTree(buffer.getBytes());
-                if (jsonNode != null) {
-                    final Map<String, Object> metadata = mapper.convertValue(jsonNode, Map.class);
-                    final Object content = metadata.remove("content");
-                    if (content != null) {
-                        final String contentAsBase64 = String.valueOf(content).replaceAll("\\n","");
-                        byte[] decodedContent = Base64.getDecoder().decode(contentAsBase64);
-                        resource.setContent(new ByteArrayInputStream(decodedContent));
+                future.complete(result);
+            }
+        };
+    }
+
+    /**
+     * Subscribe to the pushes on the configured file, if the webhook receiver is enabled: its cached content is
+     * evicted when it is removed, and fetched again as soon as it is modified. Called on the first fetch only, the
+     * registration is dropped once this fetcher is discarded.
+     */
+    private void registerWebhook() {
+        if (!webhookEnabled) {
+            return;
+        }
+        if (webhookSecret == null || webhookSecret.isEmpty()) {
+            logger.warn("GitHub webhook receiver is enabled without secret, it is not started");
+            return;
+        }
+        final GitHubFetcherConfiguration configuration = gitHubFetcherConfiguration;
+        final String requestUrl = getRequestUrl();
+        final String headKey = getCacheKey(getCommitUrl(configuration.getBranchOrTag()), SHA_VERSION_HEADER);
+
+        webhookListener = new WebhookReceiver.Listener() {
+            @Override
+            public void pushed() {
+                repositoryHeadCache.remove(headKey);
+            }
+
+            @Override
+            public void modified() {
+                removed();
+                logger.debug("{} has been pushed, fetching it again", requestUrl);
+                fetchAsync().whenComplete((resource, throwable) -> {
+                    if (throwable != null) {
+                        logger.warn("Unable to fetch {} after a push", requestUrl, throwable);
+                    } else if (resource.getContent() != null) {
+                        closeQuietly(resource.getContent());
+                    }
+                });
+            }
+
+            @Override
+            public void removed() {
+                final ConditionalCache conditionalCache = getConditionalCache();
+                conditionalCache.remove(getCacheKey(requestUrl, VERSION_HEADER));
+                conditionalCache.remove(getCacheKey(requestUrl, RAW_VERSION_HEADER));
+            }
+        };
+        WebhookReceiver.getOrStart(vertx, mapper, webhookHost, webhookPort, webhookPath, webhookSecret)
+                .register(configuration, webhookListener);
+    }
+
+    private Resource toResource(String accept, ConditionalCache.Entry response) {
+        return RAW_VERSION_HEADER.equals(accept) ? toRawResource(response) : parse(response.getBody());
+    }
+
+    private Resource parse(Buffer buffer) {
+        if (buffer == null || buffer.length() == 0) {
+            logger.warn("Something goes wrong, GitHub responds with a status 200 but the content is empty.");
+            return new Resource();
+        }
+        final long start = System.nanoTime();
+        try {
+            final Resource resource = new ContentsParser(mapper).parse(buffer);
+            resource.getMetadata().put(EDIT_URL_PROPERTY_KEY, getFileWebUrl("edit", gitHubFetcherConfiguration.getFilepath()));
+            return resource;
+        } catch (IOException ioe) {
+            throw new CompletionException(ioe);
+        } finally {
+            MetricsRegistry.get().recordPhase(getMetricsTags(getRequestUrl()), FetcherMetrics.Phase.DECODE,
+                    System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Fetch several files of the configured repository and revision at once. Files are resolved through the GitHub
+     * GraphQL API, with one query for up to {@value #MAX_BATCH_SIZE} files, instead of one REST call per file.
+     * The configured filepath is ignored.
+     *
+     * @param filepaths the paths of the files to fetch (e.g. /docs/main/README.md)
+     * @return the fetched resources by path. Paths which could not be resolved to a file are absent.
+     */
+    public Map<String, Resource> fetch(List<String> filepaths) throws FetcherException {
+        checkRepositoryFields();
+        final Map<String, Resource> resources = new LinkedHashMap<>();
+        try {
+            for (int from = 0; from < filepaths.size(); from += MAX_BATCH_SIZE) {
+                final List<String> batch = filepaths.subList(from, Math.min(filepaths.size(), from + MAX_BATCH_SIZE));
+                final BlobsQuery query = new BlobsQuery(mapper, gitHubFetcherConfiguration.getOwner(),
+                        gitHubFetcherConfiguration.getRepository(), gitHubFetcherConfiguration.getBranchOrTag(), batch);
+                final Map<String, BlobsQuery.Blob> blobs = query.parse(await(postContent(getGraphQLUrl(), query.toRequestBody(), Priority.HIGH)));
+
+                for (String filepath : batch) {
+                    final BlobsQuery.Blob blob = blobs.get(filepath);
+                    if (blob == null) {
+                        logger.warn("Unable to resolve {} in GitHub repository {}/{}", filepath,
+                                gitHubFetcherConfiguration.getOwner(), gitHubFetcherConfiguration.getRepository());
+                        continue;
                     }
-                    final Object htmlUrl = metadata.get("html_url");
-                    if (htmlUrl != null) {
-                        metadata.put(EDIT_URL_PROPERTY_KEY, String.valueOf(htmlUrl).replace("blob", "edit"));
+                    final Resource resource = new Resource();
+                    if (blob.getText() != null) {
+                        resource.setContent(new ByteArrayInputStream(blob.getText().getBytes(StandardCharsets.UTF_8)));
+                    } else {
+                        // Binary or truncated blobs are not inlined in GraphQL responses
+                        resource.setContent(await(fetchSpooledContent(getBlobUrl(blob.getOid()), RAW_VERSION_HEADER, Priority.HIGH)));
                     }
-                    metadata.put(PROVIDER_NAME_PROPERTY_KEY, "GitHub");
+                    final Map<String, Object> metadata = buildMetadata(filepath, blob.getSize());
+                    metadata.put("sha", blob.getOid());
                     resource.setMetadata(metadata);
+                    resources.put(filepath, resource);
                 }
             }
-            return resource;
+            return resources;
         } catch (Exception ex) {
+            // Large blobs may have been spooled to temporary files
+            resources.values().forEach(resource -> closeQuietly(resource.getContent()));
             logger.error(ex.getMessage(), ex);
-            throw new FetcherException("Unable to fetch GitHub content (" + ex.getMessage() + ")", ex);
+            throw new FetcherException("Unable to fetch GitHub contents (" + ex.getMessage() + ")", ex);
+        }
+    }
+
+    /**
+     * Fetch every file under the configured filepath, considered as a directory, and matching the configured
+     * include / exclude globs. The files are listed with a single recursive Git trees API call, then their blobs are
+     * downloaded concurrently, with at most {@code httpClient.maxConcurrentDownloads} downloads in flight.
+     *
+     * @return the fetched resources by path
+     */
+    public Map<String, Resource> fetchDirectory() throws FetcherException {
+        checkRequiredFields();
+        try {
+            final Tree tree = Tree.parse(mapper, await(fetchContent(getTreeUrl(), VERSION_HEADER, Priority.HIGH)), getPathFilter());
+            final List<Tree.Entry> entries = tree.getEntries();
+
+            // Results completed after a timeout are discarded
+            final List<InputStream> contents = await(mapConcurrently(entries, httpClientMaxConcurrentDownloads,
+                    entry -> fetchSpooledContent(getBlobUrl(entry.getSha()), RAW_VERSION_HEADER, Priority.HIGH),
+                    GitHubFetcher::closeQuietly));
+
+            final Map<String, Resource> resources = new LinkedHashMap<>();
+            for (int i = 0; i < entries.size(); i++) {
+                final Tree.Entry entry = entries.get(i);
+                final Resource resource = new Resource();
+                resource.setContent(contents.get(i));
+                final Map<String, Object> metadata = buildMetadata(entry.getPath(), entry.getSize());
+                metadata.put("sha", entry.getSha());
+                resource.setMetadata(metadata);
+                resources.put(entry.getPath(), resource);
+            }
+            return resources;
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+            throw new FetcherException("Unable to fetch GitHub directory (" + ex.getMessage() + ")", ex);
+        }
+    }
+
+    /**
+     * Fetch every file under the configured filepath, considered as a directory, and matching the configured
+     * include / exclude globs, by downloading the repository tarball in a single request. The archive is decompressed
+     * and extracted while it is downloaded, only the matching files are kept.
+     *
+     * @return the fetched resources by path
+     */
+    public Map<String, Resource> fetchArchive() throws FetcherException {
+        checkRequiredFields();
+        try {
+            return await(fetchTarball(getPathFilter()));
+        } catch (Exception ex) {
+            logger.error(ex.getMessage(), ex);
+            throw new FetcherException("Unable to fetch GitHub archive (" + ex.getMessage() + ")", ex);
+        }
+    }
+
+    private CompletableFuture<Map<String, Resource>> fetchTarball(PathFilter filter) {
+        final String url = getTarballUrl();
+
+        // GitHub redirects to codeload, the redirect is followed by the client
+        return send(HttpMethod.GET, url, VERSION_HEADER, Priority.HIGH, null, null, (response, future) -> {
+            if (response.statusCode() != HttpStatusCode.OK_200) {
+                response.bodyHandler(buffer -> future.completeExceptionally(unexpectedStatus(url, response)));
+                return;
+            }
+            final InputStream archive = new ReadStreamInputStream(vertx.getOrCreateContext(), response,
+                    ARCHIVE_HIGH_WATER_MARK, httpClientTimeout);
+            vertx.<Map<String, Resource>>executeBlocking(extraction -> {
+                final Map<String, Resource> resources = new LinkedHashMap<>();
+                try {
+                    new TarballReader(archive).read(filter, (path, size, content) -> {
+                        final Resource resource = new Resource();
+                        resource.setContent(copy(content, size));
+                        resource.setMetadata(buildMetadata(path, size));
+                        resources.put('/' + path, resource);
+                    });
+                    extraction.complete(resources);
+                } catch (Exception ex) {
+                    resources.values().forEach(resource -> closeQuietly(resource.getContent()));
+                    closeQuietly(archive);
+                    extraction.fail(ex);
+                }
+            }, false, extracted -> {
+                if (extracted.succeeded()) {
+                    future.complete(extracted.result());
+                } else {
+                    // The response may be paused halfway, its connection can not go back to the pool
+                    response.request().reset();
+                    future.completeExceptionally(extracted.cause());
+                }
+            });
+        });
+    }
+
+    /**
+     * Copy an archive entry, in memory or to a temporary file depending on the spool threshold.
+     */
+    private InputStream copy(InputStream content, long size) throws IOException {
+        if (size <= httpClientSpoolThreshold) {
+            final byte[] bytes = new byte[(int) size];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = content.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new EOFException("Truncated archive entry");
+                }
+                read += n;
+            }
+            return new ByteArrayInputStream(bytes);
+        }
+        final Path spooled = Files.createTempFile("gravitee-fetcher-github-", ".tmp");
+        Files.copy(content, spooled, StandardCopyOption.REPLACE_EXISTING);
+        return Files.newInputStream(spooled, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    private static void closeQuietly(InputStream content) {
+        try {
+            content.close();
+        } catch (IOException ioe) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * Apply an asynchronous task to every item, keeping at most {@code concurrency} tasks running at the same time.
+     * The results are returned in the order of the items, the first failure fails the whole execution. The results of
+     * a failed execution, including those of the tasks still running at that time, are handed to {@code discard}.
+     */
+    private <T, R> CompletableFuture<List<R>> mapConcurrently(List<T> items, int concurrency,
+                                                               Function<T, CompletableFuture<R>> task,
+                                                               Consumer<R> discard) {
+        final CompletableFuture<List<R>> future = new VertxCompletableFuture<>(vertx);
+        final List<R> results = new ArrayList<>(Collections.<R>nCopies(items.size(), null));
+        if (items.isEmpty()) {
+            future.complete(results);
+            return future;
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(items.size());
+        final Runnable[] launcher = new Runnable[1];
+        launcher[0] = () -> {
+            final int index = next.getAndIncrement();
+            if (index >= items.size() || future.isDone()) {
+                return;
+            }
+            task.apply(items.get(index)).whenComplete((result, throwable) -> {
+                synchronized (results) {
+                    if (throwable != null || future.isDone()) {
+                        if (result != null) {
+                            discard.accept(result);
+                        }
+                        if (!future.isDone()) {
+                            results.stream().filter(Objects::nonNull).forEach(discard);
+                            future.completeExceptionally(throwable);
+                        }
+                        return;
+                    }
+                    results.set(index, result);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    synchronized (results) {
+                        future.complete(results);
+                    }
+                } else {
+                    launcher[0].run();
+                }
+            });
+        };
+        for (int i = 0; i < Math.min(Math.max(1, concurrency), items.size()); i++) {
+            launcher[0].run();
+        }
+        return future;
+    }
+
+    private void checkRepositoryFields() throws FetcherException {
+        if (gitHubFetcherConfiguration.getGithubUrl() == null || gitHubFetcherConfiguration.getGithubUrl().isEmpty()
+        || gitHubFetcherConfiguration.getOwner() == null      || gitHubFetcherConfiguration.getOwner().isEmpty()
+        || gitHubFetcherConfiguration.getRepository() == null || gitHubFetcherConfiguration.getRepository().isEmpty()) {
+            throw new FetcherException("Some required configuration attributes are missing.", null);
         }
     }
 
@@ -126,34 +856,370 @@ public class GitHubFetcher implements Fetcher {
     }
 
     private String getRequestUrl() {
+        return getRequestUrl(gitHubFetcherConfiguration.getBranchOrTag());
+    }
+
+    private String getRequestUrl(String ref) {
         return gitHubFetcherConfiguration.getGithubUrl()
                 + "/repos"
                 + "/" + gitHubFetcherConfiguration.getOwner()
                 + "/" + gitHubFetcherConfiguration.getRepository()
                 + "/contents"
                 + gitHubFetcherConfiguration.getFilepath()
+                + (ref != null && !ref.isEmpty() ? ("?ref=" + ref) : "");
+    }
+
+    private String getCommitUrl(String ref) {
+        return gitHubFetcherConfiguration.getGithubUrl()
+                + "/repos"
+                + "/" + gitHubFetcherConfiguration.getOwner()
+                + "/" + gitHubFetcherConfiguration.getRepository()
+                + "/commits/" + (ref != null && !ref.isEmpty() ? ref : "HEAD");
+    }
+
+    /**
+     * Build a resource from a raw file body. Since GitHub does not send any JSON metadata in that case, the
+     * metadata are rebuilt from the configuration, and the blob SHA is read from the ETag of the response.
+     */
+    private Resource toRawResource(ConditionalCache.Entry response) {
+        final Buffer buffer = response.getBody();
+        final Resource resource = new Resource();
+        resource.setContent(new ByteBufInputStream(buffer.getByteBuf()));
+        final Map<String, Object> metadata = buildMetadata(gitHubFetcherConfiguration.getFilepath(), buffer.length());
+        final String sha = toBlobSha(response.getEtag());
+        if (sha != null) {
+            metadata.put("sha", sha);
+        }
+        resource.setMetadata(metadata);
+        return resource;
+    }
+
+    /**
+     * The ETag of a raw file is its blob SHA, possibly weak or suffixed when the response has been compressed
+     * (e.g. {@code W/"3d21ec5..."} or {@code "3d21ec5...--gzip"}).
+     *
+     * @return the blob SHA, or {@code null} if the ETag is not a blob SHA
+     */
+    private static String toBlobSha(String etag) {
+        if (etag == null) {
+            return null;
+        }
+        String sha = etag.startsWith("W/") ? etag.substring(2) : etag;
+        sha = sha.replace("\"", "");
+        if (sha.contains("--")) {
+            sha = sha.substring(0, sha.indexOf("--"));
+        }
+        return COMMIT_SHA_PATTERN.matcher(sha).matches() ? sha.toLowerCase() : null;
+    }
+
+    private Map<String, Object> buildMetadata(String filepath, long size) {
+        final String path = filepath.startsWith("/") ? filepath.substring(1) : filepath;
+
+        final Map<String, Object> metadata = new HashMap<>();
+        metadata.put("name", path.substring(path.lastIndexOf('/') + 1));
+        metadata.put("path", path);
+        metadata.put("size", size);
+        metadata.put("html_url", getFileWebUrl("blob", path));
+        metadata.put(EDIT_URL_PROPERTY_KEY, getFileWebUrl("edit", path));
+        metadata.put(PROVIDER_NAME_PROPERTY_KEY, "GitHub");
+        return metadata;
+    }
+
+    /**
+     * Get the web UI URL of a file at the configured ref.
+     *
+     * @param action {@code blob} to view the file, {@code edit} to edit it
+     */
+    private String getFileWebUrl(String action, String filepath) {
+        final String path = filepath.startsWith("/") ? filepath.substring(1) : filepath;
+        final String ref = gitHubFetcherConfiguration.getBranchOrTag() != null && !gitHubFetcherConfiguration.getBranchOrTag().isEmpty()
+                ? gitHubFetcherConfiguration.getBranchOrTag() : "HEAD";
+        return getWebUrl()
+                + "/" + gitHubFetcherConfiguration.getOwner()
+                + "/" + gitHubFetcherConfiguration.getRepository()
+                + "/" + action + "/" + ref + "/" + path;
+    }
+
+    /**
+     * Get the web UI URL matching the configured API URL: {@code https://api.github.com} for github.com and
+     * {@code https://host/api/v3} for GitHub Enterprise.
+     */
+    private String getWebUrl() {
+        final URI apiUri = URI.create(gitHubFetcherConfiguration.getGithubUrl());
+        final String path = apiUri.getPath() == null ? "" : apiUri.getPath();
+        if (GITHUB_API_HOST.equalsIgnoreCase(apiUri.getHost())) {
+            return apiUri.getScheme() + "://github.com";
+        } else if (path.endsWith(GITHUB_ENTERPRISE_API_PATH)) {
+            String url = gitHubFetcherConfiguration.getGithubUrl();
+            return url.substring(0, url.lastIndexOf(GITHUB_ENTERPRISE_API_PATH));
+        }
+        return gitHubFetcherConfiguration.getGithubUrl();
+    }
+
+    private String getGraphQLUrl() {
+        final String githubUrl = gitHubFetcherConfiguration.getGithubUrl();
+        if (githubUrl.endsWith(GITHUB_ENTERPRISE_API_PATH)) {
+            return githubUrl.substring(0, githubUrl.lastIndexOf(GITHUB_ENTERPRISE_API_PATH)) + "/api/graphql";
+        }
+        return githubUrl + "/graphql";
+    }
+
+    private PathFilter getPathFilter() {
+        return new PathFilter(gitHubFetcherConfiguration.getFilepath(), gitHubFetcherConfiguration.getIncludes(),
+                gitHubFetcherConfiguration.getExcludes());
+    }
+
+    private String getTarballUrl() {
+        return gitHubFetcherConfiguration.getGithubUrl()
+                + "/repos"
+                + "/" + gitHubFetcherConfiguration.getOwner()
+                + "/" + gitHubFetcherConfiguration.getRepository()
+                + "/tarball"
                 + (gitHubFetcherConfiguration.getBranchOrTag() != null && !gitHubFetcherConfiguration.getBranchOrTag().isEmpty()
-                    ? ("?ref=" + gitHubFetcherConfiguration.getBranchOrTag()) : "");
+                    ? "/" + gitHubFetcherConfiguration.getBranchOrTag() : "");
     }
 
-    private CompletableFuture<Buffer> fetchContent() throws Exception {
-        CompletableFuture<Buffer> future = new VertxCompletableFuture<>(vertx);
+    private String getTreeUrl() {
+        return gitHubFetcherConfiguration.getGithubUrl()
+                + "/repos"
+                + "/" + gitHubFetcherConfiguration.getOwner()
+                + "/" + gitHubFetcherConfiguration.getRepository()
+                + "/git/trees/"
+                + (gitHubFetcherConfiguration.getBranchOrTag() != null && !gitHubFetcherConfiguration.getBranchOrTag().isEmpty()
+                    ? gitHubFetcherConfiguration.getBranchOrTag() : "HEAD")
+                + "?recursive=1";
+    }
+
+    private String getBlobUrl(String sha) {
+        return gitHubFetcherConfiguration.getGithubUrl()
+                + "/repos"
+                + "/" + gitHubFetcherConfiguration.getOwner()
+                + "/" + gitHubFetcherConfiguration.getRepository()
+                + "/git/blobs/" + sha;
+    }
+
+    private CompletableFuture<Buffer> fetchContent(String url, String accept, Priority priority) {
+        return fetchResponse(url, accept, priority).thenApply(ConditionalCache.Entry::getBody);
+    }
+
+    /**
+     * Fetch a content along with the validators of the response it comes from, which may be a cached one if GitHub
+     * answers with a 304 or can not be reached.
+     */
+    private CompletableFuture<ConditionalCache.Entry> fetchResponse(String url, String accept, Priority priority) {
+        // Identical fetches in flight at the same time share the same response
+        final String key = getCacheKey(url, accept);
+        return inFlightFetches.execute(key, () -> doFetchContent(key, url, accept, priority));
+    }
+
+    private CompletableFuture<ConditionalCache.Entry> doFetchContent(String cacheKey, String url, String accept, Priority priority) {
+        // Revalidate the previous response if any, GitHub does not count 304 against the rate limit
+        final ConditionalCache conditionalCache = getConditionalCache();
+        final ConditionalCache.Entry cached = conditionalCache.get(cacheKey);
+        final FetcherMetrics metrics = MetricsRegistry.get();
+        final FetcherMetrics.Tags tags = getMetricsTags(url);
+
+        final CompletableFuture<ConditionalCache.Entry> fetched = send(HttpMethod.GET, url, accept, priority, null, request -> {
+            if (cached != null) {
+                if (cached.getEtag() != null) {
+                    request.putHeader(HttpHeaders.IF_NONE_MATCH, cached.getEtag());
+                }
+                if (cached.getLastModified() != null) {
+                    request.putHeader(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+                }
+            }
+        }, (response, future) -> {
+            if (response.statusCode() == HttpStatusCode.OK_200) {
+                metrics.recordCache(tags, FetcherMetrics.CacheResult.MISS);
+                response.bodyHandler(buffer -> {
+                    final ConditionalCache.Entry entry = new ConditionalCache.Entry(response.getHeader(HttpHeaders.ETAG),
+                            response.getHeader(HttpHeaders.LAST_MODIFIED), buffer);
+                    conditionalCache.put(cacheKey, entry.getEtag(), entry.getLastModified(), buffer);
+                    future.complete(entry);
+                });
+            } else if (response.statusCode() == HttpStatusCode.NOT_MODIFIED_304 && cached != null) {
+                logger.debug("Content of '{}' has not been modified, use the cached one", url);
+                metrics.recordCache(tags, FetcherMetrics.CacheResult.REVALIDATED);
+                response.bodyHandler(buffer -> future.complete(cached));
+            } else {
+                // Drain the body so that the connection goes back to the pool
+                response.bodyHandler(buffer -> future.completeExceptionally(unexpectedStatus(url, response)));
+            }
+        });
 
-        String url = getRequestUrl();
+        if (cached == null) {
+            return fetched;
+        }
+        // While GitHub is unreachable, the last known content is better than nothing
+        return fetched.handle((entry, throwable) -> {
+            if (throwable instanceof CircuitBreaker.OpenException) {
+                logger.debug("{}, serving the cached content of '{}'", throwable.getMessage(), url);
+                metrics.recordCache(tags, FetcherMetrics.CacheResult.HIT);
+                return cached;
+            } else if (throwable != null) {
+                throw throwable instanceof CompletionException ? (CompletionException) throwable : new CompletionException(throwable);
+            }
+            return entry;
+        });
+    }
+
+    private CompletableFuture<Buffer> postContent(String url, Buffer body, Priority priority) {
+        return send(HttpMethod.POST, url, JSON_MEDIA_TYPE, priority, body,
+                request -> request.putHeader(HttpHeaders.CONTENT_TYPE, JSON_MEDIA_TYPE),
+                (response, future) -> response.bodyHandler(buffer -> {
+                    if (response.statusCode() == HttpStatusCode.OK_200) {
+                        future.complete(buffer);
+                    } else {
+                        future.completeExceptionally(unexpectedStatus(url, response));
+                    }
+                }));
+    }
+
+    /**
+     * Download a content without buffering it: the body is spooled to a temporary file as soon as it grows above
+     * the configured threshold.
+     */
+    private CompletableFuture<InputStream> fetchSpooledContent(String url, String accept, Priority priority) {
+        return send(HttpMethod.GET, url, accept, priority, null, null, (response, future) -> {
+            if (response.statusCode() == HttpStatusCode.OK_200) {
+                ContentSpool.spool(vertx, response, httpClientSpoolThreshold).whenComplete((content, throwable) -> {
+                    if (throwable != null) {
+                        future.completeExceptionally(throwable);
+                    } else {
+                        future.complete(content);
+                    }
+                });
+            } else {
+                response.bodyHandler(buffer -> future.completeExceptionally(unexpectedStatus(url, response)));
+            }
+        });
+    }
+
+    /**
+     * Send a request as soon as the rate limit budget of the target allows it, retrying it on transient failures.
+     * Requests to a URL known to be permanently redirected are sent to its new location straight away.
+     *
+     * @param body the request body, if any
+     * @param customizer a callback to add request specific headers, if any
+     * @param responseHandler the callback reading the response and completing the returned future
+     */
+    private <T> CompletableFuture<T> send(HttpMethod method, String url, String accept, Priority priority, Buffer body,
+                                          Consumer<HttpClientRequest> customizer,
+                                          BiConsumer<HttpClientResponse, CompletableFuture<T>> responseHandler) {
+        final String target = redirectCache.resolve(url);
+        final boolean redirected = !target.equals(url);
+        if (redirected) {
+            logger.debug("'{}' has been permanently moved to '{}'", url, target);
+        }
+        final URI uri = URI.create(target);
+        final String key = uri.getHost() + '|' + getCredentialKey();
+        final RetryPolicy retryPolicy = new RetryPolicy(httpClientRetryMaxRetries, httpClientRetryInitialDelay,
+                httpClientRetryMaxDelay, httpClientRetryDeadline);
+        // Only GET requests are hedged, other ones may not be safe to send twice
+        final LatencyTracker latencyTracker = httpClientHedging && method == HttpMethod.GET ? LatencyTracker.getInstance() : null;
 
+        final CircuitBreaker circuitBreaker = !circuitBreakerEnabled ? null
+                : CircuitBreaker.get(uri.getHost() + (uri.getPort() != -1 ? ":" + uri.getPort() : ""),
+                        host -> new CircuitBreaker(host, circuitBreakerWindowSize, circuitBreakerMinimumCalls,
+                                circuitBreakerFailureRateThreshold, circuitBreakerSlowCallDuration,
+                                circuitBreakerSlowCallRateThreshold, circuitBreakerOpenDuration));
+
+        final Exchange<T> exchange = new Exchange<>(vertx, RateLimitScheduler.get(vertx), key, priority, retryPolicy,
+                latencyTracker, circuitBreaker, getMetricsTags(target), () -> {
+                    final HttpClientRequest request = prepareRequest(method, target, accept);
+                    if (customizer != null) {
+                        customizer.accept(request);
+                    }
+                    return request;
+                });
+        final BiConsumer<HttpClientResponse, CompletableFuture<T>> handler = (response, future) -> {
+            if (redirected && response.statusCode() == HttpStatusCode.NOT_FOUND_404) {
+                // The location is gone, the next request will find out where the URL leads now
+                redirectCache.remove(url);
+            }
+            responseHandler.accept(response, future);
+        };
+
+        if (warmupEnabled) {
+            warmUp(uri);
+        }
+        return exchange.execute(body, handler);
+    }
+
+    /**
+     * Resolve the host of the target and open connections to it in the background, the first time it is requested.
+     * Requests sent in the meantime do not wait for the warm-up, and one connection of the pool is always left to them.
+     */
+    private void warmUp(URI target) {
+        final String origin = target.getScheme() + "://" + target.getRawAuthority();
+        final String githubUrl = gitHubFetcherConfiguration.getGithubUrl();
+        // The rate limit endpoint does not count against the rate limit
+        final String url = (githubUrl != null && githubUrl.startsWith(origin) ? githubUrl : origin) + "/rate_limit";
+        final boolean proxied = gitHubFetcherConfiguration.isUseSystemProxy();
+        // Through a proxy, the target host is resolved by the proxy
+        final String host = !proxied ? target.getHost()
+                : HTTPS_SCHEME.equalsIgnoreCase(target.getScheme()) ? httpClientProxyHttpsHost : httpClientProxyHttpHost;
+
+        ConnectionWarmer.get(vertx).warmUp(origin + (proxied ? " (proxied)" : ""), host,
+                Math.max(1, Math.min(warmupConnections, httpClientMaxPoolSize - 1)),
+                () -> this.<Void>send(HttpMethod.GET, url, VERSION_HEADER, Priority.LOW, null, null,
+                        (response, future) -> response.bodyHandler(body -> future.complete(null))));
+    }
+
+    private String getCacheKey(String url, String accept) {
+        return url + '|' + accept + '|' + getCredentialKey();
+    }
+
+    private FetcherMetrics.Tags getMetricsTags(String url) {
+        return new FetcherMetrics.Tags(URI.create(url).getHost(),
+                gitHubFetcherConfiguration.getOwner() + '/' + gitHubFetcherConfiguration.getRepository(),
+                getCredentialLabel());
+    }
+
+    /**
+     * @return an identifier of the credential used to authenticate, which isolates the cached contents of different
+     * credentials. The token is only kept as a SHA-256 digest.
+     */
+    private String getCredentialKey() {
+        final String token = gitHubFetcherConfiguration.getPersonalAccessToken();
+        return gitHubFetcherConfiguration.getUsername() + ':' + (token == null ? "" : sha256(token));
+    }
+
+    /**
+     * @return a label of the credential used to authenticate, for metrics. Nothing is derived from the token.
+     */
+    private String getCredentialLabel() {
+        final String username = gitHubFetcherConfiguration.getUsername();
+        return username == null || username.isEmpty() ? "anonymous" : username;
+    }
+
+    private static String sha256(String value) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    private FetcherException unexpectedStatus(String url, HttpClientResponse response) {
+        return new FetcherException("Unable to fetch '" + url + "'. Status code: " + response.statusCode() + ". Message: " + response.statusMessage(), null);
+    }
+
+    private HttpClientRequest prepareRequest(HttpMethod method, String url, String accept) {
         URI requestUri = URI.create(url);
         boolean ssl = HTTPS_SCHEME.equalsIgnoreCase(requestUri.getScheme());
 
-        final HttpClientOptions options = new HttpClientOptions()
-                .setSsl(ssl)
-                .setTrustAll(true)
-                .setMaxPoolSize(1)
-                .setKeepAlive(false)
-                .setTcpKeepAlive(false)
-                .setConnectTimeout(httpClientTimeout);
+        final int port = requestUri.getPort() != -1 ? requestUri.getPort() :
+                (HTTPS_SCHEME.equals(requestUri.getScheme()) ? 443 : 80);
 
+        ProxyOptions proxyOptions = null;
         if (gitHubFetcherConfiguration.isUseSystemProxy()) {
-            ProxyOptions proxyOptions = new ProxyOptions();
+            proxyOptions = new ProxyOptions();
             proxyOptions.setType(ProxyType.valueOf(httpClientProxyType));
             if (HTTPS_SCHEME.equals(requestUri.getScheme())) {
                 proxyOptions.setHost(httpClientProxyHttpsHost);
@@ -166,7 +1232,108 @@ public class GitHubFetcher implements Fetcher {
                 proxyOptions.setUsername(httpClientProxyHttpUsername);
                 proxyOptions.setPassword(httpClientProxyHttpPassword);
             }
-            options.setProxyOptions(proxyOptions);
+        }
+
+        final HttpClient httpClient = HttpClientRegistry.get(vertx)
+                .getOrCreate(requestUri.getHost(), port, ssl, proxyOptions, this::createHttpClient);
+
+        HttpClientRequest request = httpClient.request(
+                method,
+                port,
+                requestUri.getHost(),
+                requestUri.toString()
+        );
+
+        // Follow redirect since GitHub may return a 3xx status code
+        request.setFollowRedirects(true);
+
+        request.setTimeout(httpClientTimeout);
+
+        request.putHeader("Accept", accept);
+        request.putHeader("User-Agent", gitHubFetcherConfiguration.getOwner());
+
+        if (gitHubFetcherConfiguration.getUsername() != null && !gitHubFetcherConfiguration.getUsername().trim().isEmpty()
+        && gitHubFetcherConfiguration.getPersonalAccessToken() != null && !gitHubFetcherConfiguration.getPersonalAccessToken().trim().isEmpty()) {
+            String auth = gitHubFetcherConfiguration.getUsername() + ":" + gitHubFetcherConfiguration.getPersonalAccessToken();
+            request.putHeader("Authorization", "Basic " + Base64.getEncoder().encodeToString(auth.getBytes()));
+        }
+
+        return request;
+    }
+
+    /**
+     * Configure how the server certificates are trusted, and the TLS engine.
+     *
+     * Connections are opened from the pooled client of their host, whose engine is bound to the host and port: the
+     * JDK engine resumes the TLS session of a former connection to the host instead of doing a full handshake. The
+     * OpenSSL engine, when enabled and netty-tcnative is available, makes full handshakes cheaper but does not resume
+     * client sessions with the Netty version in use.
+     */
+    private void configureSsl(HttpClientOptions options) {
+        if (sslTrustAll) {
+            options.setTrustAll(true);
+        } else if (sslTruststorePath != null && !sslTruststorePath.isEmpty()) {
+            switch (sslTruststoreType.toLowerCase()) {
+                case "jks":
+                    options.setTrustStoreOptions(new JksOptions().setPath(sslTruststorePath).setPassword(sslTruststorePassword));
+                    break;
+                case "pkcs12":
+                    options.setPfxTrustOptions(new PfxOptions().setPath(sslTruststorePath).setPassword(sslTruststorePassword));
+                    break;
+                case "pem":
+                    options.setPemTrustOptions(new PemTrustOptions().addCertPath(sslTruststorePath));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported trust store type: " + sslTruststoreType);
+            }
+        }
+        // Otherwise, the default trust store of the JVM is used
+
+        if (sslOpenSsl) {
+            if (OpenSSLEngineOptions.isAvailable() && (!httpClientHttp2Enabled || OpenSSLEngineOptions.isAlpnAvailable())) {
+                options.setOpenSslEngineOptions(new OpenSSLEngineOptions());
+            } else {
+                logger.warn("OpenSSL is not available, the JDK TLS engine is used instead");
+            }
+        }
+    }
+
+    /**
+     * ALPN is only supported by the JDK TLS engine from Java 9 (or with the Jetty ALPN agent on Java 8), and by the
+     * OpenSSL engine when netty-tcnative is recent enough.
+     */
+    private static boolean isAlpnAvailable(HttpClientOptions options) {
+        return options.getSslEngineOptions() instanceof OpenSSLEngineOptions
+                ? OpenSSLEngineOptions.isAlpnAvailable() : JdkSSLEngineOptions.isAlpnAvailable();
+    }
+
+    private HttpClient createHttpClient(HttpClientRegistry.Key key) {
+        final HttpClientOptions options = new HttpClientOptions()
+                .setSsl(key.isSsl())
+                .setMaxPoolSize(httpClientMaxPoolSize)
+                .setKeepAlive(true)
+                .setTcpKeepAlive(true)
+                .setIdleTimeout(httpClientIdleTimeout)
+                .setConnectTimeout(httpClientTimeout)
+                // Ask for gzip / deflate encoded responses, they are decompressed as they are received
+                .setTryUseCompression(httpClientCompression)
+                .setProxyOptions(key.getProxyOptions());
+
+        if (key.isSsl()) {
+            configureSsl(options);
+        }
+
+        if (httpClientHttp2Enabled && key.isSsl()) {
+            if (isAlpnAvailable(options)) {
+                // h2 is negotiated with ALPN, servers which do not support it are still talked to with HTTP/1.1.
+                // Clear text connections stay on HTTP/1.1 since some servers reject h2c upgrade requests.
+                options.setProtocolVersion(HttpVersion.HTTP_2)
+                        .setUseAlpn(true)
+                        .setHttp2MaxPoolSize(httpClientHttp2MaxPoolSize)
+                        .setHttp2MultiplexingLimit(httpClientHttp2MultiplexingLimit);
+            } else {
+                logger.warn("ALPN is not available, HTTP/1.1 is used instead of HTTP/2");
+            }
         }
 
         final HttpClient httpClient = vertx.createHttpClient(options);
@@ -181,7 +1348,13 @@ public class GitHubFetcher implements Fetcher {
                     if (statusCode == 301 || statusCode == 302 || statusCode == 303) {
                         m = HttpMethod.GET;
                     }
-                    URI uri = HttpUtils.resolveURIReference(resp.request().absoluteURI(), location);
+                    // Requests are created with an absolute URI, which absoluteURI() prefixes with the host again
+                    final String requestUri = resp.request().uri().startsWith("/")
+                            ? resp.request().absoluteURI() : resp.request().uri();
+                    URI uri = HttpUtils.resolveURIReference(requestUri, location);
+                    if ((statusCode == 301 || statusCode == 308) && redirectCacheTtl > 0) {
+                        redirectCache.put(requestUri, uri.toString(), redirectCacheTtl);
+                    }
                     boolean redirectSsl;
                     int port = uri.getPort();
                     String protocol = uri.getScheme();
@@ -218,61 +1391,6 @@ public class GitHubFetcher implements Fetcher {
             }
         });
 
-        final int port = requestUri.getPort() != -1 ? requestUri.getPort() :
-                (HTTPS_SCHEME.equals(requestUri.getScheme()) ? 443 : 80);
-
-        try {
-            HttpClientRequest request = httpClient.request(
-                    HttpMethod.GET,
-                    port,
-                    requestUri.getHost(),
-                    requestUri.toString()
-            );
-
-            // Follow redirect since GitHub may return a 3xx status code
-            request.setFollowRedirects(true);
-
-            request.setTimeout(httpClientTimeout);
-
-            request.putHeader("Accept", VERSION_HEADER);
-            request.putHeader("User-Agent", gitHubFetcherConfiguration.getOwner());
-
-            if (gitHubFetcherConfiguration.getUsername() != null && !gitHubFetcherConfiguration.getUsername().trim().isEmpty()
-            && gitHubFetcherConfiguration.getPersonalAccessToken() != null && !gitHubFetcherConfiguration.getPersonalAccessToken().trim().isEmpty()) {
-                String auth = gitHubFetcherConfiguration.getUsername() + ":" + gitHubFetcherConfiguration.getPersonalAccessToken();
-                request.putHeader("Authorization", "Basic " + Base64.getEncoder().encodeToString(auth.getBytes()));
-            }
-
-            request.handler(response -> {
-                if (response.statusCode() == HttpStatusCode.OK_200) {
-                    response.bodyHandler(buffer -> {
-                        future.complete(buffer);
-
-                        // Close client
-                        httpClient.close();
-                    });
-                } else {
-                    future.completeExceptionally(new FetcherException("Unable to fetch '" + url + "'. Status code: " + response.statusCode() + ". Message: " + response.statusMessage(), null));
-                }
-            });
-
-            request.exceptionHandler(event -> {
-                try {
-                    future.completeExceptionally(event);
-
-                    // Close client
-                    httpClient.close();
-                } catch (IllegalStateException ise) {
-                    // Do not take care about exception when closing client
-                }
-            });
-
-            request.end();
-        } catch (Exception ex) {
-            logger.error("Unable to fetch content using HTTP", ex);
-            future.completeExceptionally(ex);
-        }
-
-        return future;
+        return httpClient;
     }
 }
@@ -17,6 +17,8 @@ package io.gravitee.fetcher.github;
 
 import io.gravitee.fetcher.api.FetcherConfiguration;
 
+import java.util.List;
+
 /**
  * @author Nicolas GERAUD (nicolas.geraud at graviteesource.com) 
  * @author GraviteeSource Team
@@ -31,6 +33,10 @@ public class GitHubFetcherConfiguration implements FetcherConfiguration {
     private String username;
     private String personalAccessToken;
     private String editLink;
+    private boolean fetchRaw;
+    private boolean resolveRef;
+    private List<String> includes;
+    private List<String> excludes;
 
 
     public String getGithubUrl() {
@@ -104,4 +110,36 @@ public class GitHubFetcherConfiguration implements FetcherConfiguration {
     public void setEditLink(String editLink) {
         this.editLink = editLink;
     }
+
+    public boolean isFetchRaw() {
+        return fetchRaw;
+    }
+
+    public void setFetchRaw(boolean fetchRaw) {
+        this.fetchRaw = fetchRaw;
+    }
+
+    public boolean isResolveRef() {
+        return resolveRef;
+    }
+
+    public void setResolveRef(boolean resolveRef) {
+        this.resolveRef = resolveRef;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public void setIncludes(List<String> includes) {
+        this.includes = includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public void setExcludes(List<String> excludes) {
+        this.excludes = excludes;
+    }
 }
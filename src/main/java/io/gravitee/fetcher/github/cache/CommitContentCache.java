@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, process-wide cache of contents keyed by an immutable revision (a full commit SHA) and a path. Since the
+ * content of a path at a given commit never changes, entries never need to be revalidated and can be served without
+ * any network call. Contents are kept along with the validators of the response they have been fetched from. The
+ * least recently used entries are evicted once the total size goes above the limit.
+ *
+ * @author GraviteeSource Team
+ */
+public class CommitContentCache {
+
+    private static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private static final CommitContentCache INSTANCE = new CommitContentCache(DEFAULT_MAX_SIZE);
+
+    private final long maxSize;
+    private final Map<String, ConditionalCache.Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    public CommitContentCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public static CommitContentCache getInstance() {
+        return INSTANCE;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized ConditionalCache.Entry get(String key) {
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, ConditionalCache.Entry content) {
+        if (content.length() > maxSize) {
+            return;
+        }
+        final ConditionalCache.Entry previous = entries.put(key, content);
+        if (previous != null) {
+            size -= previous.length();
+        }
+        size += content.length();
+
+        final Iterator<ConditionalCache.Entry> eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            size -= eldest.next().length();
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.cache;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, process-wide store of the last response received for a given request, along with its validators
+ * ({@code ETag} and {@code Last-Modified}). It is used to revalidate content with conditional requests and to serve
+ * the cached body back when GitHub answers with a {@code 304 Not Modified}. The least recently used entries are
+ * evicted once the total size of the bodies goes above the limit.
+ *
+ * @author GraviteeSource Team
+ */
+public class ConditionalCache {
+
+    private static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private static final ConditionalCache INSTANCE = new ConditionalCache(DEFAULT_MAX_SIZE);
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile long maxSize;
+    private long size;
+
+    public ConditionalCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public static ConditionalCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the process-wide cache, resized to the given maximum size (in bytes) if it changed.
+     */
+    public static ConditionalCache getInstance(long maxSize) {
+        if (INSTANCE.maxSize != maxSize) {
+            INSTANCE.resize(maxSize);
+        }
+        return INSTANCE;
+    }
+
+    private synchronized void resize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Store the response body for the given key. Nothing is stored when the response carries no validator since it
+     * could not be revalidated anyway, nor when the body alone is larger than the cache.
+     */
+    public synchronized void put(String key, String etag, String lastModified, Buffer body) {
+        remove(key);
+        final Entry entry = new Entry(etag, lastModified, body);
+        if ((etag != null || lastModified != null) && entry.length() <= maxSize) {
+            entries.put(key, entry);
+            size += entry.length();
+            evict();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        final Entry previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous.length();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private void evict() {
+        final Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            size -= eldest.next().length();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * A response body along with its validators.
+     */
+    public static final class Entry {
+        private final String etag;
+        private final String lastModified;
+        private final Buffer body;
+
+        public Entry(String etag, String lastModified, Buffer body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public Buffer getBody() {
+            return body;
+        }
+
+        int length() {
+            return body == null ? 0 : body.length();
+        }
+    }
+}
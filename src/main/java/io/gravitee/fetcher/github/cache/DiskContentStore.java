@@ -0,0 +1,428 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent, content-addressed store of fetched files, so that a restarted node can serve and revalidate
+ * contents from disk instead of downloading them again.
+ *
+ * Contents are stored once per Git blob SHA under {@code blobs/}, and read back through memory mapping. An index, stored
+ * under {@code index/} with one small JSON document per fetched resource, maps a fetch (host, owner, repository, path,
+ * ref and credential) to the blob SHA, its validators and its metadata. Every file is written to {@code tmp/} first
+ * and atomically moved into place, so that a crash never leaves a partial blob or index entry behind. Blobs are
+ * checked against their SHA before being stored, and the least recently used ones are evicted once the store grows
+ * above its maximum size.
+ *
+ * @author GraviteeSource Team
+ */
+public class DiskContentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskContentStore.class);
+
+    private static final Map<Path, DiskContentStore> stores = new ConcurrentHashMap<>();
+
+    private final ObjectMapper mapper;
+    private final Path blobsDirectory;
+    private final Path indexDirectory;
+    private final Path tmpDirectory;
+    private final long maxSize;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Long> blobs = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private DiskContentStore(ObjectMapper mapper, Path directory, long maxSize) {
+        this.mapper = mapper;
+        this.blobsDirectory = directory.resolve("blobs");
+        this.indexDirectory = directory.resolve("index");
+        this.tmpDirectory = directory.resolve("tmp");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the store located in the given directory, opening it on first access.
+     */
+    public static DiskContentStore open(ObjectMapper mapper, Path directory, long maxSize) {
+        return stores.computeIfAbsent(directory.toAbsolutePath().normalize(), path -> {
+            DiskContentStore store = new DiskContentStore(mapper, path, maxSize);
+            try {
+                store.load();
+            } catch (IOException ioe) {
+                throw new IllegalStateException("Unable to open content store " + path, ioe);
+            }
+            return store;
+        });
+    }
+
+    /**
+     * Get the store located in the given directory without opening it.
+     *
+     * @return the store, or {@code null} if it has not been opened yet
+     */
+    public static DiskContentStore getIfOpen(Path directory) {
+        return stores.get(directory.toAbsolutePath().normalize());
+    }
+
+    private void load() throws IOException {
+        Files.createDirectories(blobsDirectory);
+        Files.createDirectories(indexDirectory);
+        Files.createDirectories(tmpDirectory);
+
+        // Leftovers of writes interrupted by a crash
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(tmpDirectory)) {
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+        }
+
+        final List<Path> blobFiles = new ArrayList<>();
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(blobsDirectory)) {
+            for (Path shard : shards) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard)) {
+                    files.forEach(blobFiles::add);
+                }
+            }
+        }
+        // Least recently used first, so that the LRU order survives restarts
+        blobFiles.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+        synchronized (blobs) {
+            for (Path blob : blobFiles) {
+                long length = Files.size(blob);
+                blobs.put(blob.getFileName().toString(), length);
+                size += length;
+            }
+        }
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(indexDirectory)) {
+            for (Path file : entries) {
+                try {
+                    Entry entry = mapper.readValue(file.toFile(), Entry.class);
+                    index.put(entry.getKey(), entry);
+                } catch (IOException ioe) {
+                    logger.warn("Ignoring unreadable content store index entry {}", file);
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+
+        evict();
+        logger.info("Content store {} opened with {} entries and {} bytes of content", blobsDirectory.getParent(), index.size(), size);
+    }
+
+    /**
+     * @return the entry stored for the given key, or {@code null} if unknown or if its content has been evicted.
+     */
+    public Entry lookup(String key) {
+        final Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (blobs) {
+            if (!blobs.containsKey(entry.getSha())) {
+                index.remove(key, entry);
+                return null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Read the content of a blob through memory mapping.
+     */
+    public InputStream read(String sha) throws IOException {
+        final Path blob = blobPath(sha);
+        try (FileChannel channel = FileChannel.open(blob, StandardOpenOption.READ)) {
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            synchronized (blobs) {
+                // Refresh the LRU order
+                blobs.get(sha);
+            }
+            Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+            return new ByteBufInputStream(Unpooled.wrappedBuffer(mapped), true);
+        }
+    }
+
+    /**
+     * Store a content and the index entry pointing to it. The content is not stored if it does not match the given
+     * Git blob SHA.
+     */
+    public void put(String key, String sha, String etag, String lastModified, Map<String, Object> metadata,
+                    byte[] content) throws IOException {
+        if (!sha.equals(gitBlobSha(content))) {
+            logger.warn("Content of {} does not match its blob SHA {}, it is not stored", key, sha);
+            return;
+        }
+
+        final boolean known;
+        synchronized (blobs) {
+            known = blobs.containsKey(sha);
+        }
+        if (!known) {
+            final Path blob = blobPath(sha);
+            Files.createDirectories(blob.getParent());
+            writeAtomically(blob, content);
+            added(sha, content.length);
+        }
+
+        final Entry entry = new Entry(key, sha, etag, lastModified, metadata);
+        writeAtomically(indexDirectory.resolve(sha1(key.getBytes(StandardCharsets.UTF_8)) + ".json"),
+                mapper.writeValueAsBytes(entry));
+        index.put(key, entry);
+
+        evict();
+    }
+
+    /**
+     * @return {@code true} if the content of the given blob is stored.
+     */
+    public boolean contains(String sha) {
+        synchronized (blobs) {
+            return blobs.containsKey(sha);
+        }
+    }
+
+    /**
+     * Store a blob content on its own, without any index entry, streaming it to disk. The content is not stored if
+     * it does not match the given Git blob SHA.
+     *
+     * @return {@code true} if the content is stored.
+     */
+    public boolean putBlob(String sha, InputStream content) throws IOException {
+        final Path tmp = Files.createTempFile(tmpDirectory, "write-", ".tmp");
+        try {
+            long length = 0;
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final byte[] chunk = new byte[8192];
+                int n;
+                while ((n = content.read(chunk)) > 0) {
+                    final ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, n);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    length += n;
+                }
+                channel.force(true);
+            }
+            // The header of a Git blob holds its length, the content is hashed once it is known
+            final MessageDigest digest = sha1Digest();
+            digest.update(("blob " + length + '\0').getBytes(StandardCharsets.US_ASCII));
+            try (InputStream written = Files.newInputStream(tmp)) {
+                final byte[] chunk = new byte[8192];
+                int n;
+                while ((n = written.read(chunk)) > 0) {
+                    digest.update(chunk, 0, n);
+                }
+            }
+            if (!sha.equals(hex(digest.digest()))) {
+                logger.warn("Content does not match its blob SHA {}, it is not stored", sha);
+                return false;
+            }
+
+            final Path blob = blobPath(sha);
+            Files.createDirectories(blob.getParent());
+            try {
+                Files.move(tmp, blob, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp, blob, StandardCopyOption.REPLACE_EXISTING);
+            }
+            added(sha, length);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        evict();
+        return true;
+    }
+
+    private void added(String sha, long length) {
+        synchronized (blobs) {
+            if (blobs.put(sha, length) == null) {
+                size += length;
+            }
+        }
+    }
+
+    private void evict() throws IOException {
+        final List<String> evicted = new ArrayList<>();
+        synchronized (blobs) {
+            final Iterator<Map.Entry<String, Long>> eldest = blobs.entrySet().iterator();
+            while (size > maxSize && eldest.hasNext()) {
+                Map.Entry<String, Long> blob = eldest.next();
+                size -= blob.getValue();
+                evicted.add(blob.getKey());
+                eldest.remove();
+            }
+        }
+        for (String sha : evicted) {
+            logger.debug("Evicting blob {} from the content store", sha);
+            Files.deleteIfExists(blobPath(sha));
+        }
+        if (!evicted.isEmpty()) {
+            for (Entry entry : index.values()) {
+                if (evicted.contains(entry.getSha())) {
+                    index.remove(entry.getKey(), entry);
+                    Files.deleteIfExists(indexDirectory.resolve(sha1(entry.getKey().getBytes(StandardCharsets.UTF_8)) + ".json"));
+                }
+            }
+        }
+    }
+
+    private void writeAtomically(Path target, byte[] bytes) throws IOException {
+        final Path tmp = Files.createTempFile(tmpDirectory, "write-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private Path blobPath(String sha) {
+        return blobsDirectory.resolve(sha.substring(0, 2)).resolve(sha);
+    }
+
+    private static FileTime lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException ioe) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    /**
+     * Compute the SHA Git gives to a blob with the given content.
+     */
+    static String gitBlobSha(byte[] content) {
+        final MessageDigest digest = sha1Digest();
+        digest.update(("blob " + content.length + '\0').getBytes(StandardCharsets.US_ASCII));
+        return hex(digest.digest(content));
+    }
+
+    private static String sha1(byte[] bytes) {
+        return hex(sha1Digest().digest(bytes));
+    }
+
+    private static MessageDigest sha1Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    public static final class Entry {
+        private String key;
+        private String sha;
+        private String etag;
+        private String lastModified;
+        private Map<String, Object> metadata;
+
+        public Entry() {
+        }
+
+        Entry(String key, String sha, String etag, String lastModified, Map<String, Object> metadata) {
+            this.key = key;
+            this.sha = sha;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void setKey(String key) {
+            this.key = key;
+        }
+
+        public String getSha() {
+            return sha;
+        }
+
+        public void setSha(String sha) {
+            this.sha = sha;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public void setEtag(String etag) {
+            this.etag = etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public void setLastModified(String lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        public Map<String, Object> getMetadata() {
+            return metadata;
+        }
+
+        public void setMetadata(Map<String, Object> metadata) {
+            this.metadata = metadata;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.cache;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A process-wide cache of the permanent redirects (301 / 308) GitHub answers for renamed or transferred repositories,
+ * so that later requests go straight to the new location instead of paying an extra round trip, which counts against
+ * the rate limit.
+ *
+ * Redirects are kept by host and path prefix: the end of the path the request and the location have in common is
+ * considered as a resource of the redirected prefix. For instance a redirect of
+ * {@code /repos/owner/old/contents/README.md} to {@code /repositories/42/contents/README.md} is kept as a redirect of
+ * {@code /repos/owner/old} to {@code /repositories/42}, so that every other file of the repository is redirected too.
+ *
+ * @author GraviteeSource Team
+ */
+public class RedirectCache {
+
+    private static final int MAX_ENTRIES = 1000;
+    private static final int MAX_HOPS = 5;
+
+    private static final RedirectCache INSTANCE = new RedirectCache();
+
+    private final Map<String, Redirect> redirects = new LinkedHashMap<String, Redirect>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Redirect> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static RedirectCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Remember that a URL has been permanently redirected. Redirects changing the query are not kept, since they can
+     * not be applied to other resources.
+     *
+     * @param ttl the time the redirect is kept, in milliseconds
+     */
+    public synchronized void put(String url, String location, long ttl) {
+        final URI from = URI.create(url);
+        final URI to = URI.create(location);
+        if (!Objects.equals(from.getRawQuery(), to.getRawQuery()) || from.getRawPath() == null || to.getRawPath() == null) {
+            return;
+        }
+
+        final String[] fromSegments = segments(from.getRawPath());
+        final String[] toSegments = segments(to.getRawPath());
+        if (fromSegments.length == 0) {
+            return;
+        }
+        // Keep at least one segment in the redirected prefix, never redirect a whole host
+        int common = 0;
+        while (common < fromSegments.length - 1 && common < toSegments.length
+                && fromSegments[fromSegments.length - 1 - common].equals(toSegments[toSegments.length - 1 - common])) {
+            common++;
+        }
+
+        final String prefix = origin(from) + join(fromSegments, fromSegments.length - common);
+        final String targetPath = join(toSegments, toSegments.length - common);
+        // A redirect which only differs by its trailing slash would map the prefix onto itself
+        if (prefix.equals(origin(to) + targetPath)) {
+            return;
+        }
+        final String target = to.getScheme() + "://" + to.getRawAuthority() + targetPath;
+        redirects.put(prefix, new Redirect(target, System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * @return the URL to request instead of the given one, or the given one if it is not known to be redirected
+     */
+    public synchronized String resolve(String url) {
+        String resolved = url;
+        for (int hop = 0; hop < MAX_HOPS; hop++) {
+            final String next = redirect(resolved, false);
+            if (next == null) {
+                break;
+            }
+            resolved = next;
+        }
+        return resolved;
+    }
+
+    /**
+     * Forget the redirects the given URL is resolved with, e.g. once the location turns out to be gone.
+     */
+    public synchronized void remove(String url) {
+        String resolved = url;
+        for (int hop = 0; hop < MAX_HOPS && resolved != null; hop++) {
+            resolved = redirect(resolved, true);
+        }
+    }
+
+    public synchronized void clear() {
+        redirects.clear();
+    }
+
+    synchronized int size() {
+        return redirects.size();
+    }
+
+    /**
+     * @return the redirected URL, or {@code null} if the URL is not redirected
+     */
+    private String redirect(String url, boolean remove) {
+        final URI uri = URI.create(url);
+        if (uri.getRawPath() == null || redirects.isEmpty()) {
+            return null;
+        }
+        final String origin = origin(uri);
+        final String[] segments = segments(uri.getRawPath());
+        // Longest prefix first
+        for (int length = segments.length; length > 0; length--) {
+            final String key = origin + join(segments, length);
+            final Redirect redirect = redirects.get(key);
+            if (redirect == null) {
+                continue;
+            }
+            if (remove || redirect.expiresAt < System.currentTimeMillis()) {
+                redirects.remove(key);
+                if (!remove) {
+                    continue;
+                }
+            }
+            final StringBuilder target = new StringBuilder(redirect.target);
+            for (int i = length; i < segments.length; i++) {
+                target.append('/').append(segments[i]);
+            }
+            if (uri.getRawPath().endsWith("/") && segments.length > 0) {
+                target.append('/');
+            }
+            if (uri.getRawQuery() != null) {
+                target.append('?').append(uri.getRawQuery());
+            }
+            return target.toString();
+        }
+        return null;
+    }
+
+    private static String origin(URI uri) {
+        final int port = uri.getPort() != -1 ? uri.getPort() : ("https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+        return uri.getScheme().toLowerCase() + "://" + uri.getHost().toLowerCase() + ':' + port;
+    }
+
+    private static String[] segments(String path) {
+        final String trimmed = path.startsWith("/") ? path.substring(1) : path;
+        if (trimmed.isEmpty()) {
+            return new String[0];
+        }
+        return (trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed).split("/", -1);
+    }
+
+    private static String join(String[] segments, int length) {
+        final StringBuilder path = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            path.append('/').append(segments[i]);
+        }
+        return path.toString();
+    }
+
+    private static final class Redirect {
+        private final String target;
+        private final long expiresAt;
+
+        Redirect(String target, long expiresAt) {
+            this.target = target;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process-wide cache of the commit SHA each repository ref points to, along with the time it was last checked
+ * against GitHub. As long as a head is fresh, every file of the repository at that ref is served from the
+ * {@link CommitContentCache} without any call, so a refresh cycle costs a single (conditional) call per repository and
+ * ref instead of one per file.
+ *
+ * @author GraviteeSource Team
+ */
+public class RepositoryHeadCache {
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final RepositoryHeadCache INSTANCE = new RepositoryHeadCache();
+
+    private final Map<String, Head> heads = new LinkedHashMap<String, Head>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Head> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static RepositoryHeadCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the commit SHA of the head, or {@code null} if unknown or checked more than {@code maxAge} ms ago.
+     */
+    public synchronized String get(String key, long maxAge) {
+        final Head head = heads.get(key);
+        return head == null || System.currentTimeMillis() - head.checkedAt > maxAge ? null : head.sha;
+    }
+
+    public synchronized void put(String key, String sha) {
+        heads.put(key, new Head(sha, System.currentTimeMillis()));
+    }
+
+    public synchronized void remove(String key) {
+        heads.remove(key);
+    }
+
+    public synchronized void clear() {
+        heads.clear();
+    }
+
+    private static final class Head {
+        private final String sha;
+        private final long checkedAt;
+
+        Head(String sha, long checkedAt) {
+            this.sha = sha;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A GitHub GraphQL query resolving many files of the same repository and revision in a single round trip. Each path
+ * is mapped to an aliased {@code object(expression: "ref:path")} field of the repository.
+ *
+ * @author GraviteeSource Team
+ */
+public class BlobsQuery {
+
+    private static final String ALIAS_PREFIX = "f";
+
+    private final ObjectMapper mapper;
+    private final String owner;
+    private final String repository;
+    private final String ref;
+    private final List<String> paths;
+
+    public BlobsQuery(ObjectMapper mapper, String owner, String repository, String ref, List<String> paths) {
+        this.mapper = mapper;
+        this.owner = owner;
+        this.repository = repository;
+        this.ref = ref == null || ref.isEmpty() ? "HEAD" : ref;
+        this.paths = paths;
+    }
+
+    /**
+     * @return the JSON body to POST to the GraphQL endpoint.
+     */
+    public Buffer toRequestBody() throws IOException {
+        StringBuilder query = new StringBuilder("query($owner: String!, $name: String!");
+        for (int i = 0; i < paths.size(); i++) {
+            query.append(", $").append(ALIAS_PREFIX).append(i).append(": String!");
+        }
+        query.append(") { repository(owner: $owner, name: $name) {");
+        for (int i = 0; i < paths.size(); i++) {
+            query.append(' ').append(ALIAS_PREFIX).append(i)
+                    .append(": object(expression: $").append(ALIAS_PREFIX).append(i)
+                    .append(") { ... on Blob { oid byteSize isBinary isTruncated text } }");
+        }
+        query.append(" } }");
+
+        ObjectNode body = mapper.createObjectNode();
+        body.put("query", query.toString());
+        ObjectNode variables = body.putObject("variables");
+        variables.put("owner", owner);
+        variables.put("name", repository);
+        for (int i = 0; i < paths.size(); i++) {
+            String path = paths.get(i);
+            variables.put(ALIAS_PREFIX + i, ref + ':' + (path.startsWith("/") ? path.substring(1) : path));
+        }
+        return Buffer.buffer(mapper.writeValueAsBytes(body));
+    }
+
+    /**
+     * Read the GraphQL response. Paths which do not resolve to a blob are absent from the returned map.
+     */
+    public Map<String, Blob> parse(Buffer response) throws IOException {
+        final JsonNode root = mapper.readTree((InputStream) new ByteBufInputStream(response.getByteBuf()));
+        final JsonNode repositoryNode = root.path("data").path("repository");
+        if (repositoryNode.isMissingNode() || repositoryNode.isNull()) {
+            JsonNode errors = root.path("errors");
+            throw new IOException("Unable to resolve blobs of " + owner + '/' + repository
+                    + (errors.isArray() && errors.size() > 0 ? " (" + errors.get(0).path("message").asText() + ")" : ""));
+        }
+
+        final Map<String, Blob> blobs = new LinkedHashMap<>();
+        for (int i = 0; i < paths.size(); i++) {
+            JsonNode object = repositoryNode.path(ALIAS_PREFIX + i);
+            if (object.hasNonNull("oid")) {
+                blobs.put(paths.get(i), new Blob(
+                        object.path("oid").asText(),
+                        object.path("byteSize").asLong(),
+                        object.path("isBinary").asBoolean() || object.path("isTruncated").asBoolean() || !object.hasNonNull("text")
+                                ? null : object.path("text").asText()));
+            }
+        }
+        return blobs;
+    }
+
+    public static final class Blob {
+        private final String oid;
+        private final long size;
+        private final String text;
+
+        Blob(String oid, long size, String text) {
+            this.oid = oid;
+            this.size = size;
+            this.text = text;
+        }
+
+        public String getOid() {
+            return oid;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the blob content, or {@code null} when GitHub did not inline it (binary or truncated blob).
+         */
+        public String getText() {
+            return text;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.streams.ReadStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Collects a body stream in memory as long as it stays below a threshold, and switches to a temporary file above it,
+ * so that large contents never have to be held in the heap. The temporary file is deleted when the returned
+ * {@link InputStream} is closed.
+ *
+ * @author GraviteeSource Team
+ */
+public final class ContentSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentSpool.class);
+
+    private static final String TEMP_FILE_PREFIX = "gravitee-fetcher-github-";
+
+    private final Vertx vertx;
+    private final ReadStream<Buffer> stream;
+    private final long threshold;
+    private final CompletableFuture<InputStream> future = new CompletableFuture<>();
+
+    private Buffer memory = Buffer.buffer();
+    private String path;
+    private AsyncFile file;
+
+    private ContentSpool(Vertx vertx, ReadStream<Buffer> stream, long threshold) {
+        this.vertx = vertx;
+        this.stream = stream;
+        this.threshold = threshold;
+    }
+
+    public static CompletableFuture<InputStream> spool(Vertx vertx, ReadStream<Buffer> stream, long threshold) {
+        ContentSpool spool = new ContentSpool(vertx, stream, threshold);
+        stream.exceptionHandler(spool::fail);
+        stream.endHandler(v -> spool.end());
+        stream.handler(spool::inMemory);
+        return spool.future;
+    }
+
+    private void inMemory(Buffer chunk) {
+        memory.appendBuffer(chunk);
+        if (memory.length() > threshold) {
+            stream.pause();
+            vertx.<String>executeBlocking(creation -> {
+                try {
+                    creation.complete(Files.createTempFile(TEMP_FILE_PREFIX, ".tmp").toString());
+                } catch (IOException ioe) {
+                    creation.fail(ioe);
+                }
+            }, created -> {
+                if (created.failed()) {
+                    fail(created.cause());
+                    return;
+                }
+                path = created.result();
+                vertx.fileSystem().open(path, new OpenOptions().setWrite(true), opened -> {
+                    if (opened.failed()) {
+                        fail(opened.cause());
+                        return;
+                    }
+                    logger.debug("Content is larger than {} bytes, spooling it to {}", threshold, path);
+                    file = opened.result();
+                    // A write failure (e.g. a full disk) would otherwise leave the spool waiting for ever
+                    file.exceptionHandler(this::fail);
+                    file.write(memory);
+                    memory = null;
+                    stream.handler(this::toFile);
+                    stream.resume();
+                });
+            });
+        }
+    }
+
+    private void toFile(Buffer chunk) {
+        if (future.isDone()) {
+            // The spool has failed, the rest of the body is discarded
+            return;
+        }
+        file.write(chunk);
+        if (file.writeQueueFull()) {
+            stream.pause();
+            file.drainHandler(v -> stream.resume());
+        }
+    }
+
+    private void end() {
+        if (future.isDone()) {
+            return;
+        }
+        if (file == null) {
+            future.complete(new ByteBufInputStream(memory.getByteBuf()));
+            return;
+        }
+        file.close(closed -> {
+            if (closed.failed()) {
+                fail(closed.cause());
+                return;
+            }
+            try {
+                future.complete(Files.newInputStream(Paths.get(path), StandardOpenOption.DELETE_ON_CLOSE));
+            } catch (IOException ioe) {
+                fail(ioe);
+            }
+        });
+    }
+
+    private void fail(Throwable throwable) {
+        if (!future.completeExceptionally(throwable)) {
+            return;
+        }
+        if (file != null) {
+            // The stream may be paused until the file is drained, which will not happen anymore
+            stream.resume();
+        }
+        if (path != null) {
+            Path spooled = Paths.get(path);
+            if (file != null) {
+                file.close(closed -> delete(spooled));
+            } else {
+                delete(spooled);
+            }
+        }
+    }
+
+    private static void delete(Path spooled) {
+        try {
+            Files.deleteIfExists(spooled);
+        } catch (IOException ioe) {
+            logger.warn("Unable to delete spooled content {}", spooled, ioe);
+        }
+    }
+}
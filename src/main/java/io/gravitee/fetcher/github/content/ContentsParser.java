@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.gravitee.fetcher.api.Fetcher;
+import io.gravitee.fetcher.api.Resource;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns the JSON document returned by the GitHub contents API into a {@link Resource}.
+ *
+ * The document is read with a streaming parser: the base64 {@code content} field is decoded by the parser while it
+ * reads it (skipping the line breaks GitHub inserts every 60 characters), straight into the buffer the content is
+ * served from, so that neither a {@link String} of the payload nor an intermediate tree is ever built.
+ *
+ * @author GraviteeSource Team
+ */
+public class ContentsParser {
+
+    private static final String CONTENT_FIELD = "content";
+
+    private final ObjectMapper mapper;
+
+    public ContentsParser(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public Resource parse(Buffer buffer) throws IOException {
+        final Resource resource = new Resource();
+        final Map<String, Object> metadata = new HashMap<>();
+
+        try (JsonParser parser = mapper.getFactory().createParser((InputStream) new ByteBufInputStream(buffer.getByteBuf()))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Unexpected GitHub response, a JSON object was expected");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken token = parser.nextToken();
+                if (CONTENT_FIELD.equals(field) && token == JsonToken.VALUE_STRING) {
+                    // The decoded content is at most 3/4 of the whole document
+                    final ByteBuf content = Unpooled.buffer(buffer.length() / 4 * 3 + 3);
+                    parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, new ByteBufOutputStream(content));
+                    resource.setContent(new ByteBufInputStream(content, true));
+                } else if (!CONTENT_FIELD.equals(field)) {
+                    metadata.put(field, parser.readValueAs(Object.class));
+                }
+            }
+        }
+
+        metadata.put(Fetcher.PROVIDER_NAME_PROPERTY_KEY, "GitHub");
+        resource.setMetadata(metadata);
+
+        return resource;
+    }
+}
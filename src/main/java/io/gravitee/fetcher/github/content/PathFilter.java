@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the files of a repository located under a directory and matching include and exclude globs. Globs are
+ * matched against the path relative to the directory (e.g. {@code **.md}).
+ *
+ * @author GraviteeSource Team
+ */
+public class PathFilter {
+
+    private final String prefix;
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+
+    public PathFilter(String directory, List<String> includes, List<String> excludes) {
+        this.prefix = normalize(directory);
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+    }
+
+    /**
+     * @param path the path of a file, relative to the repository root and without leading slash
+     */
+    public boolean accept(String path) {
+        if (!prefix.isEmpty() && !path.startsWith(prefix + '/')) {
+            return false;
+        }
+        final String relativePath = prefix.isEmpty() ? path : path.substring(prefix.length() + 1);
+        return (includes.isEmpty() || matches(includes, relativePath)) && !matches(excludes, relativePath);
+    }
+
+    private static String normalize(String directory) {
+        String prefix = directory == null ? "" : directory.trim();
+        while (prefix.startsWith("/")) {
+            prefix = prefix.substring(1);
+        }
+        while (prefix.endsWith("/")) {
+            prefix = prefix.substring(0, prefix.length() - 1);
+        }
+        return prefix;
+    }
+
+    private static List<PathMatcher> matchers(List<String> globs) {
+        final List<PathMatcher> matchers = new ArrayList<>();
+        if (globs != null) {
+            for (String glob : globs) {
+                if (glob != null && !glob.trim().isEmpty()) {
+                    matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob.trim()));
+                }
+            }
+        }
+        return matchers;
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, String path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(Paths.get(path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a gzipped tar archive, as returned by the GitHub tarball API, entry by entry while it is downloaded. Only
+ * regular files are reported, and the top-level directory GitHub wraps the repository in
+ * ({@code owner-repository-sha/}) is removed from their path. Entries whose path would escape the repository root
+ * (absolute, or with a {@code ..} segment) are skipped.
+ *
+ * @author GraviteeSource Team
+ */
+public class TarballReader {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private static final char REGULAR_FILE = '0';
+    private static final char OLD_REGULAR_FILE = '\0';
+    private static final char PAX_HEADER = 'x';
+    private static final char GNU_LONG_NAME = 'L';
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK_SIZE];
+
+    public TarballReader(InputStream gzipped) throws IOException {
+        this.in = new GZIPInputStream(gzipped, 64 * 1024);
+    }
+
+    public interface EntryHandler {
+
+        /**
+         * @param path the path of the file, relative to the repository root and without leading slash
+         * @param size the size of the file
+         * @param content the content of the file, which must be consumed before returning
+         */
+        void handle(String path, long size, InputStream content) throws IOException;
+    }
+
+    /**
+     * Read the whole archive, calling the handler for each regular file accepted by the filter.
+     */
+    public void read(PathFilter filter, EntryHandler handler) throws IOException {
+        String longName = null;
+        while (readBlock(header)) {
+            if (isEndOfArchive(header)) {
+                break;
+            }
+            final char type = (char) header[156];
+            final long size = parseOctal(header, 124, 12);
+
+            if (type == PAX_HEADER || type == GNU_LONG_NAME) {
+                final String extended = new String(readFully(size), StandardCharsets.UTF_8);
+                skipPadding(size);
+                longName = type == GNU_LONG_NAME ? trimNul(extended) : paxPath(extended, longName);
+                continue;
+            }
+
+            final String name = longName != null ? longName : headerName(header);
+            longName = null;
+
+            final String path = stripTopLevelDirectory(name);
+            if ((type == REGULAR_FILE || type == OLD_REGULAR_FILE) && path != null && isContained(path) && filter.accept(path)) {
+                final BoundedInputStream content = new BoundedInputStream(in, size);
+                handler.handle(path, size, content);
+                content.skipRemaining();
+            } else {
+                skipFully(size);
+            }
+            skipPadding(size);
+        }
+    }
+
+    private boolean readBlock(byte[] block) throws IOException {
+        int read = 0;
+        while (read < block.length) {
+            int n = in.read(block, read, block.length - read);
+            if (n < 0) {
+                if (read == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated tar archive");
+            }
+            read += n;
+        }
+        return true;
+    }
+
+    private byte[] readFully(long size) throws IOException {
+        final byte[] bytes = new byte[(int) size];
+        int read = 0;
+        while (read < bytes.length) {
+            int n = in.read(bytes, read, bytes.length - read);
+            if (n < 0) {
+                throw new EOFException("Truncated tar archive");
+            }
+            read += n;
+        }
+        return bytes;
+    }
+
+    private void skipFully(long size) throws IOException {
+        long remaining = size;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Truncated tar archive");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private void skipPadding(long size) throws IOException {
+        final long remainder = size % BLOCK_SIZE;
+        if (remainder != 0) {
+            skipFully(BLOCK_SIZE - remainder);
+        }
+    }
+
+    private static boolean isEndOfArchive(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String headerName(byte[] block) {
+        final String name = field(block, 0, 100);
+        final String prefix = "ustar".equals(field(block, 257, 5)) ? field(block, 345, 155) : "";
+        return prefix.isEmpty() ? name : prefix + '/' + name;
+    }
+
+    private static String paxPath(String records, String defaultPath) {
+        // Each record is "<length> <key>=<value>\n"
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            if (space > 0 && record.startsWith("path=", space + 1)) {
+                return record.substring(space + 6);
+            }
+        }
+        return defaultPath;
+    }
+
+    private static String stripTopLevelDirectory(String name) {
+        final int slash = name.indexOf('/');
+        return slash < 0 || slash == name.length() - 1 ? null : name.substring(slash + 1);
+    }
+
+    private static boolean isContained(String path) {
+        if (path.startsWith("/")) {
+            return false;
+        }
+        for (String segment : path.split("/")) {
+            if ("..".equals(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String field(byte[] block, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && block[end] != 0) {
+            end++;
+        }
+        return new String(block, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static String trimNul(String value) {
+        final int nul = value.indexOf('\0');
+        return nul < 0 ? value : value.substring(0, nul);
+    }
+
+    private static long parseOctal(byte[] block, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final byte b = block[i];
+            if (b == 0 || b == ' ') {
+                if (value != 0) {
+                    break;
+                }
+                continue;
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long size) {
+            super(in);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(bytes, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+            // The underlying archive stream is still in use
+        }
+
+        void skipRemaining() throws IOException {
+            while (remaining > 0) {
+                if (skip(remaining) <= 0 && read() < 0) {
+                    throw new EOFException("Truncated tar archive");
+                }
+            }
+        }
+    }
+}
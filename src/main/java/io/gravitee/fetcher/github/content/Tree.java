@@ -0,0 +1,91 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.buffer.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The blobs listed by a recursive Git trees API response, restricted to the ones accepted by a {@link PathFilter}.
+ *
+ * @author GraviteeSource Team
+ */
+public class Tree {
+
+    private static final Logger logger = LoggerFactory.getLogger(Tree.class);
+
+    private static final String BLOB_TYPE = "blob";
+
+    private final List<Entry> entries;
+
+    private Tree(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static Tree parse(ObjectMapper mapper, Buffer buffer, PathFilter filter) throws IOException {
+        final JsonNode root = mapper.readTree((InputStream) new ByteBufInputStream(buffer.getByteBuf()));
+        if (root.path("truncated").asBoolean()) {
+            logger.warn("The tree is too large and has been truncated by GitHub, some files are missing");
+        }
+
+        final List<Entry> entries = new ArrayList<>();
+        for (JsonNode node : root.path("tree")) {
+            final String path = node.path("path").asText();
+            if (BLOB_TYPE.equals(node.path("type").asText()) && filter.accept(path)) {
+                entries.add(new Entry('/' + path, node.path("sha").asText(), node.path("size").asLong()));
+            }
+        }
+        return new Tree(entries);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public static final class Entry {
+        private final String path;
+        private final String sha;
+        private final long size;
+
+        Entry(String path, String sha, long size) {
+            this.path = path;
+            this.sha = sha;
+            this.size = size;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getSha() {
+            return sha;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+}
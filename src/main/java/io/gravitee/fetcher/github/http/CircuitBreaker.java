@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A process-wide circuit breaker per GitHub host, so that requests to a host which is down fail fast instead of
+ * waiting for their timeout.
+ *
+ * The outcome of the last calls is kept in a sliding window. The breaker opens when the rate of failed calls (errors
+ * and server errors) or of slow calls goes above its threshold. Once open, calls are rejected until the open duration
+ * is over. The breaker then becomes half-open and lets a single probe call through: it closes if the probe succeeds,
+ * and opens again otherwise.
+ *
+ * Every admitted call is given a permit, the generation of the breaker it was admitted in, which must be passed back
+ * with its outcome. The generation changes on every transition and every probe, so that the outcome of a call
+ * admitted before (e.g. a lost probe answering late) is ignored.
+ *
+ * @author GraviteeSource Team
+ */
+public class CircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Returned by {@link #tryAcquire()} when a call is rejected.
+     */
+    public static final long NO_PERMIT = -1;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String key;
+    private final int minimumCalls;
+    private final int failureRateThreshold;
+    private final long slowCallDuration;
+    private final int slowCallRateThreshold;
+    private final long openDuration;
+
+    private final boolean[] failures;
+    private final boolean[] slowCalls;
+    private int calls;
+    private int next;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAt;
+    private long probeStartedAt;
+
+    /**
+     * @param windowSize the number of calls the rates are computed on
+     * @param minimumCalls the number of calls required before the rates are taken into account
+     * @param failureRateThreshold the percentage of failed calls above which the breaker opens
+     * @param slowCallDuration the duration above which a call is considered slow, in milliseconds
+     * @param slowCallRateThreshold the percentage of slow calls above which the breaker opens
+     * @param openDuration the time the breaker stays open before letting a probe call through, in milliseconds
+     */
+    public CircuitBreaker(String key, int windowSize, int minimumCalls, int failureRateThreshold, long slowCallDuration,
+                          int slowCallRateThreshold, long openDuration) {
+        this.key = key;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallDuration = slowCallDuration;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDuration = openDuration;
+        this.failures = new boolean[windowSize];
+        this.slowCalls = new boolean[windowSize];
+    }
+
+    /**
+     * Get the breaker of the given host, creating it with the given factory on first access.
+     */
+    public static CircuitBreaker get(String key, Function<String, CircuitBreaker> factory) {
+        return breakers.computeIfAbsent(key, factory);
+    }
+
+    /**
+     * Forget the breakers of every host, along with their state.
+     */
+    public static void clear() {
+        breakers.clear();
+    }
+
+    /**
+     * @return the permit of the call if it is allowed, in which case its outcome must be reported with it, or
+     * {@link #NO_PERMIT} if it is rejected
+     */
+    public synchronized long tryAcquire() {
+        final long now = System.currentTimeMillis();
+        switch (state) {
+            case OPEN:
+                if (now - openedAt < openDuration) {
+                    return NO_PERMIT;
+                }
+                logger.info("Circuit breaker of {} is half-open, probing", key);
+                state = State.HALF_OPEN;
+                probeStartedAt = now;
+                return ++generation;
+            case HALF_OPEN:
+                // A single probe at a time, unless the previous one has been lost
+                if (now - probeStartedAt < openDuration) {
+                    return NO_PERMIT;
+                }
+                probeStartedAt = now;
+                return ++generation;
+            default:
+                return generation;
+        }
+    }
+
+    public synchronized void onSuccess(long permit, long duration) {
+        record(permit, false, duration >= slowCallDuration);
+    }
+
+    public synchronized void onFailure(long permit, long duration) {
+        record(permit, true, duration >= slowCallDuration);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(long permit, boolean failure, boolean slow) {
+        if (permit != generation) {
+            // Outcome of a call admitted before the last transition, or of a lost probe
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (failure || slow) {
+                open();
+            } else {
+                logger.info("Circuit breaker of {} is closed", key);
+                state = State.CLOSED;
+                generation++;
+                calls = 0;
+                next = 0;
+            }
+            return;
+        }
+
+        failures[next] = failure;
+        slowCalls[next] = slow;
+        next = (next + 1) % failures.length;
+        calls = Math.min(failures.length, calls + 1);
+
+        if (calls >= minimumCalls) {
+            int failed = 0;
+            int slowed = 0;
+            for (int i = 0; i < calls; i++) {
+                failed += failures[i] ? 1 : 0;
+                slowed += slowCalls[i] ? 1 : 0;
+            }
+            if (failed * 100 >= failureRateThreshold * calls || slowed * 100 >= slowCallRateThreshold * calls) {
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        logger.warn("Circuit breaker of {} is open, calls are rejected for {} ms", key, openDuration);
+        state = State.OPEN;
+        generation++;
+        openedAt = System.currentTimeMillis();
+        calls = 0;
+        next = 0;
+    }
+
+    /**
+     * Thrown when a call is rejected because the breaker is open.
+     */
+    public static final class OpenException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        public OpenException(String key) {
+            super("Circuit breaker of " + key + " is open");
+        }
+    }
+}
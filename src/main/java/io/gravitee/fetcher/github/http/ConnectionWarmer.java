@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import io.gravitee.fetcher.github.vertx.VertxCompletableFuture;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Closeable;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Warms up the connections to a GitHub host in the background, so that the fetches following the first one do not
+ * all pay for the DNS resolution, the TCP connection and the TLS handshake. Fetches never wait for the warm-up.
+ *
+ * The host is resolved with the {@link Vertx} address resolver, the one the HTTP clients use, which caches the
+ * resolved addresses as long as their DNS records allow. Connections are then opened by sending concurrent requests
+ * to an endpoint which does not consume the rate limit, and stay in the pool of the client afterwards. A host is
+ * warmed up once per {@link Vertx} instance.
+ *
+ * @author GraviteeSource Team
+ */
+public class ConnectionWarmer implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionWarmer.class);
+
+    private static final Map<Vertx, ConnectionWarmer> warmers = new ConcurrentHashMap<>();
+
+    private final Vertx vertx;
+    private final Map<String, CompletableFuture<Void>> warmUps = new ConcurrentHashMap<>();
+
+    public interface Request {
+
+        /**
+         * Send a request to the warmed up host, the same way as the fetches are (i.e. through the rate limit scheduler
+         * and the circuit breaker).
+         *
+         * @return a future completed once the response has been read
+         */
+        CompletableFuture<?> send();
+    }
+
+    private ConnectionWarmer(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Get the warmer attached to the given {@link Vertx} instance, creating it on first access.
+     */
+    public static ConnectionWarmer get(Vertx vertx) {
+        return warmers.computeIfAbsent(vertx, v -> {
+            ConnectionWarmer warmer = new ConnectionWarmer(v);
+            if (v instanceof VertxInternal) {
+                ((VertxInternal) v).addCloseHook(warmer);
+            }
+            return warmer;
+        });
+    }
+
+    /**
+     * Warm up a target, unless it has already been.
+     *
+     * @param key the target, with the way it is reached (e.g. through a proxy)
+     * @param host the host to resolve: the target host, or the proxy host when the target is reached through a proxy
+     * @param connections the number of connections to open
+     * @return a future completed once the target is warmed up. It never fails, failures are only logged.
+     */
+    public CompletableFuture<Void> warmUp(String key, String host, int connections, Request request) {
+        final CompletableFuture<Void> warmedUp = new VertxCompletableFuture<>(vertx);
+        // The requests may be sent from the calling thread, they must not find the warm-up in progress
+        final CompletableFuture<Void> previous = warmUps.putIfAbsent(key, warmedUp);
+        if (previous != null) {
+            return previous;
+        }
+        final long start = System.currentTimeMillis();
+        resolve(host, resolved -> {
+            if (resolved.failed()) {
+                logger.warn("Unable to resolve {} while warming up {}", host, key, resolved.cause());
+            }
+            final AtomicInteger pending = new AtomicInteger(connections);
+            final Runnable opened = () -> {
+                if (pending.decrementAndGet() == 0) {
+                    logger.info("Connections to {} warmed up in {} ms", key, System.currentTimeMillis() - start);
+                    warmedUp.complete(null);
+                }
+            };
+            for (int i = 0; i < connections; i++) {
+                open(key, request, opened);
+            }
+        });
+        return warmedUp;
+    }
+
+    private void resolve(String host, Handler<AsyncResult<?>> handler) {
+        if (host == null || !(vertx instanceof VertxInternal)) {
+            handler.handle(Future.succeededFuture());
+            return;
+        }
+        ((VertxInternal) vertx).resolveAddress(host, handler::handle);
+    }
+
+    private void open(String key, Request request, Runnable opened) {
+        try {
+            request.send().whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    logger.warn("Unable to open a connection to {}: {}", key, throwable.getMessage());
+                }
+                opened.run();
+            });
+        } catch (Exception ex) {
+            logger.warn("Unable to open a connection to {}", key, ex);
+            opened.run();
+        }
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> completionHandler) {
+        warmers.remove(vertx, this);
+        warmUps.clear();
+        completionHandler.handle(Future.succeededFuture());
+    }
+}
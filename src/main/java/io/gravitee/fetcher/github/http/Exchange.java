@@ -0,0 +1,329 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import io.gravitee.fetcher.github.http.RateLimitScheduler.Priority;
+import io.gravitee.fetcher.github.metrics.FetcherMetrics;
+import io.gravitee.fetcher.github.metrics.MetricsRegistry;
+import io.gravitee.fetcher.github.vertx.VertxCompletableFuture;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends a request to GitHub, and gets a response to it despite transient failures.
+ *
+ * Each attempt waits for the {@link RateLimitScheduler} to allow it. Failed attempts are retried as told by the
+ * {@link RetryPolicy}. When a {@link LatencyTracker} is given, a second (hedged) request is sent if no response has
+ * arrived after the 95th percentile of the recent response times: the first response wins, and the other request is
+ * reset. When a {@link CircuitBreaker} is given, requests are rejected while it is open.
+ *
+ * The phases of every request, its status and the size of its response are recorded to the {@link FetcherMetrics}.
+ *
+ * @author GraviteeSource Team
+ */
+public class Exchange<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(Exchange.class);
+
+    private static final double HEDGING_PERCENTILE = 95;
+
+    private static final String RATE_LIMIT_REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    public interface RequestFactory {
+
+        /**
+         * @return a new request, ready to be ended
+         */
+        HttpClientRequest create() throws Exception;
+    }
+
+    private final Vertx vertx;
+    private final RateLimitScheduler scheduler;
+    private final String key;
+    private final Priority priority;
+    private final RetryPolicy retryPolicy;
+    private final LatencyTracker latencyTracker;
+    private final CircuitBreaker circuitBreaker;
+    private final FetcherMetrics.Tags tags;
+    private final FetcherMetrics metrics = MetricsRegistry.get();
+    private final RequestFactory requestFactory;
+    private final CompletableFuture<T> future;
+
+    private Buffer body;
+    private BiConsumer<HttpClientResponse, CompletableFuture<T>> responseHandler;
+    private long deadlineAt;
+    private volatile int retries;
+
+    /**
+     * @param key the key of the rate limit budget and response times of the target
+     * @param latencyTracker the response times used to hedge requests, {@code null} to disable hedging
+     * @param circuitBreaker the circuit breaker of the target, {@code null} to disable it
+     * @param tags the tags of the recorded metrics
+     */
+    public Exchange(Vertx vertx, RateLimitScheduler scheduler, String key, Priority priority, RetryPolicy retryPolicy,
+                    LatencyTracker latencyTracker, CircuitBreaker circuitBreaker, FetcherMetrics.Tags tags,
+                    RequestFactory requestFactory) {
+        this.vertx = vertx;
+        this.scheduler = scheduler;
+        this.key = key;
+        this.priority = priority;
+        this.retryPolicy = retryPolicy;
+        this.latencyTracker = latencyTracker;
+        this.circuitBreaker = circuitBreaker;
+        this.tags = tags;
+        this.requestFactory = requestFactory;
+        this.future = new VertxCompletableFuture<>(vertx);
+    }
+
+    /**
+     * @param body the request body, if any
+     * @param responseHandler the callback reading the response and completing the returned future. It is called once,
+     *                        with the response of the attempt which is not retried.
+     */
+    public CompletableFuture<T> execute(Buffer body, BiConsumer<HttpClientResponse, CompletableFuture<T>> responseHandler) {
+        this.body = body;
+        this.responseHandler = responseHandler;
+        this.deadlineAt = System.currentTimeMillis() + retryPolicy.getDeadline();
+        attempt();
+        return future;
+    }
+
+    private void attempt() {
+        final Round round = new Round();
+        send(round);
+
+        if (latencyTracker != null) {
+            final long delay = latencyTracker.percentile(key, HEDGING_PERCENTILE);
+            if (delay >= 0) {
+                vertx.setTimer(Math.max(1, delay), id -> {
+                    if (!future.isDone() && round.hedge()) {
+                        logger.debug("No response from {} after {} ms, sending a hedged request", key, delay);
+                        send(round);
+                    }
+                });
+            }
+        }
+    }
+
+    private void send(Round round) {
+        final long breakerPermit = circuitBreaker != null ? circuitBreaker.tryAcquire() : CircuitBreaker.NO_PERMIT;
+        if (circuitBreaker != null && breakerPermit == CircuitBreaker.NO_PERMIT) {
+            // Fail fast, unless another request of the round may still succeed
+            if (round.abandon()) {
+                future.completeExceptionally(new CircuitBreaker.OpenException(circuitBreaker.getKey()));
+            }
+            return;
+        }
+
+        final long queuedAt = System.nanoTime();
+        scheduler.acquire(key, priority).whenComplete((permit, throwable) -> {
+            if (throwable != null) {
+                future.completeExceptionally(throwable);
+                return;
+            }
+            metrics.recordPhase(tags, FetcherMetrics.Phase.QUEUEING, System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+            final HttpClientRequest request;
+            try {
+                request = requestFactory.create();
+            } catch (Exception ex) {
+                logger.error("Unable to fetch content using HTTP", ex);
+                future.completeExceptionally(ex);
+                return;
+            }
+            if (!round.add(request)) {
+                // Another request of the round already got a response
+                return;
+            }
+
+            final long start = System.currentTimeMillis();
+            final long sentAt = System.nanoTime();
+            // Only called when a new connection is opened for the request
+            request.connectionHandler(connection -> metrics.recordPhase(tags, FetcherMetrics.Phase.CONNECT,
+                    System.nanoTime() - sentAt, TimeUnit.NANOSECONDS));
+
+            request.handler(received -> {
+                metrics.recordPhase(tags, FetcherMetrics.Phase.TIME_TO_FIRST_BYTE, System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+                final HttpClientResponse response = meter(request, received);
+                scheduler.update(key, response.statusCode(), response.headers());
+                final long duration = System.currentTimeMillis() - start;
+                if (latencyTracker != null) {
+                    latencyTracker.record(key, duration);
+                }
+                if (circuitBreaker != null) {
+                    if (response.statusCode() >= 500) {
+                        circuitBreaker.onFailure(breakerPermit, duration);
+                    } else {
+                        circuitBreaker.onSuccess(breakerPermit, duration);
+                    }
+                }
+
+                if (retryPolicy.isRetryable(response.statusCode(), response.headers())) {
+                    final long delay = retryPolicy.nextDelay(retries, response.headers(), deadlineAt);
+                    if (delay >= 0) {
+                        // Drain the body so that the connection goes back to the pool
+                        response.bodyHandler(buffer -> {});
+                        if (round.fail(request)) {
+                            retry(delay, "status " + response.statusCode());
+                        }
+                        return;
+                    }
+                }
+
+                final List<HttpClientRequest> losers = round.win(request);
+                if (losers == null) {
+                    request.reset();
+                    return;
+                }
+                losers.forEach(HttpClientRequest::reset);
+                responseHandler.accept(response, future);
+            });
+
+            request.exceptionHandler(failure -> {
+                if (circuitBreaker != null && !round.isLoser(request)) {
+                    circuitBreaker.onFailure(breakerPermit, System.currentTimeMillis() - start);
+                }
+                if (round.isWinner(request)) {
+                    // The response has been received but could not be read
+                    future.completeExceptionally(failure);
+                    return;
+                }
+                if (round.fail(request)) {
+                    final long delay = retryPolicy.nextDelay(retries, null, deadlineAt);
+                    if (delay >= 0) {
+                        retry(delay, failure.getMessage());
+                    } else {
+                        future.completeExceptionally(failure);
+                    }
+                }
+            });
+
+            if (body != null) {
+                request.end(body.copy());
+            } else {
+                request.end();
+            }
+        });
+    }
+
+    private HttpClientResponse meter(HttpClientRequest request, HttpClientResponse response) {
+        metrics.recordStatus(tags, response.statusCode());
+        if (response.request() != request) {
+            metrics.recordRedirect(tags);
+        }
+        final String remaining = response.getHeader(RATE_LIMIT_REMAINING_HEADER);
+        if (remaining != null) {
+            try {
+                metrics.recordRateLimitRemaining(tags, Long.parseLong(remaining.trim()));
+            } catch (NumberFormatException nfe) {
+                logger.debug("Invalid {} header: {}", RATE_LIMIT_REMAINING_HEADER, remaining);
+            }
+        }
+        return new MeteredResponse(response, metrics, tags);
+    }
+
+    private void retry(long delay, String reason) {
+        retries++;
+        logger.debug("Request to {} failed ({}), retry #{} in {} ms", key, reason, retries, delay);
+        if (delay == 0) {
+            attempt();
+        } else {
+            vertx.setTimer(delay, id -> attempt());
+        }
+    }
+
+    /**
+     * The requests sent for a single attempt: the original one and the hedged one, if any.
+     */
+    private static final class Round {
+        private final Set<HttpClientRequest> requests = new HashSet<>();
+        private int waiting = 1;
+        private boolean decided;
+        private HttpClientRequest winner;
+
+        synchronized boolean hedge() {
+            if (decided || (waiting == 0 && requests.isEmpty())) {
+                return false;
+            }
+            waiting++;
+            return true;
+        }
+
+        synchronized boolean add(HttpClientRequest request) {
+            waiting--;
+            if (decided) {
+                return false;
+            }
+            requests.add(request);
+            return true;
+        }
+
+        /**
+         * @return the other requests of the round, or {@code null} if another one already won
+         */
+        synchronized List<HttpClientRequest> win(HttpClientRequest request) {
+            if (decided) {
+                return null;
+            }
+            decided = true;
+            winner = request;
+            requests.remove(request);
+            final List<HttpClientRequest> losers = new ArrayList<>(requests);
+            requests.clear();
+            return losers;
+        }
+
+        synchronized boolean isWinner(HttpClientRequest request) {
+            return winner == request;
+        }
+
+        /**
+         * @return {@code true} if the request has been reset because another one won
+         */
+        synchronized boolean isLoser(HttpClientRequest request) {
+            return decided && winner != request;
+        }
+
+        /**
+         * @return {@code true} if a request given up before being sent was the last hope of the round
+         */
+        synchronized boolean abandon() {
+            waiting--;
+            return !decided && waiting == 0 && requests.isEmpty();
+        }
+
+        /**
+         * @return {@code true} if every request of the round has failed, in which case the attempt has to be retried
+         */
+        synchronized boolean fail(HttpClientRequest request) {
+            if (!requests.remove(request)) {
+                return false;
+            }
+            return !decided && waiting == 0 && requests.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Closeable;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.net.ProxyOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Keeps long-lived, pooled {@link HttpClient}s shared by every GitHub fetcher running on the same {@link Vertx}
+ * instance. Clients are keyed by target host, port, scheme and proxy settings so that keep-alive connections can be
+ * reused from one fetch to another. All the clients are closed when the {@link Vertx} instance is closed.
+ *
+ * @author GraviteeSource Team
+ */
+public class HttpClientRegistry implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpClientRegistry.class);
+
+    private static final Map<Vertx, HttpClientRegistry> registries = new ConcurrentHashMap<>();
+
+    private final Vertx vertx;
+    private final Map<Key, HttpClient> clients = new ConcurrentHashMap<>();
+
+    private HttpClientRegistry(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Get the registry attached to the given {@link Vertx} instance, creating it on first access.
+     */
+    public static HttpClientRegistry get(Vertx vertx) {
+        return registries.computeIfAbsent(vertx, v -> {
+            HttpClientRegistry registry = new HttpClientRegistry(v);
+            if (v instanceof VertxInternal) {
+                ((VertxInternal) v).addCloseHook(registry);
+            }
+            return registry;
+        });
+    }
+
+    /**
+     * Get the client for the given target, creating it with the given factory if none exists yet.
+     * The factory is called at most once per key.
+     */
+    public HttpClient getOrCreate(String host, int port, boolean ssl, ProxyOptions proxyOptions,
+                                  Function<Key, HttpClient> clientFactory) {
+        return clients.computeIfAbsent(new Key(host, port, ssl, proxyOptions), key -> {
+            logger.debug("Creating pooled HTTP client for {}", key);
+            return clientFactory.apply(key);
+        });
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> completionHandler) {
+        registries.remove(vertx, this);
+        clients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (IllegalStateException ise) {
+                // Do not take care about exception when closing client
+            }
+        });
+        clients.clear();
+        completionHandler.handle(Future.succeededFuture());
+    }
+
+    public static final class Key {
+        private final String host;
+        private final int port;
+        private final boolean ssl;
+        private final ProxyOptions proxyOptions;
+
+        Key(String host, int port, boolean ssl, ProxyOptions proxyOptions) {
+            this.host = host;
+            this.port = port;
+            this.ssl = ssl;
+            this.proxyOptions = proxyOptions == null ? null : new ProxyOptions(proxyOptions);
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public boolean isSsl() {
+            return ssl;
+        }
+
+        public ProxyOptions getProxyOptions() {
+            return proxyOptions;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return port == key.port &&
+                    ssl == key.ssl &&
+                    Objects.equals(host, key.host) &&
+                    Objects.equals(proxyOptions, key.proxyOptions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, ssl, proxyOptions);
+        }
+
+        @Override
+        public String toString() {
+            return (ssl ? "https://" : "http://") + host + ':' + port + (proxyOptions != null ? " (proxy)" : "");
+        }
+    }
+}
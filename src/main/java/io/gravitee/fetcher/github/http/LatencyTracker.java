@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the most recent response times of each host, to know how long a response usually takes to arrive.
+ *
+ * @author GraviteeSource Team
+ */
+public class LatencyTracker {
+
+    private static final int WINDOW = 100;
+    private static final int MIN_SAMPLES = 20;
+
+    private static final LatencyTracker INSTANCE = new LatencyTracker();
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    public static LatencyTracker getInstance() {
+        return INSTANCE;
+    }
+
+    public void record(String host, long latency) {
+        windows.computeIfAbsent(host, h -> new Window()).add(latency);
+    }
+
+    /**
+     * @return the given percentile of the recent response times of the host, in milliseconds, or {@code -1} if not
+     * enough responses have been received yet.
+     */
+    public long percentile(String host, double percentile) {
+        final Window window = windows.get(host);
+        return window == null ? -1 : window.percentile(percentile);
+    }
+
+    public void clear() {
+        windows.clear();
+    }
+
+    private static final class Window {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void add(long latency) {
+            samples[next] = latency;
+            next = (next + 1) % WINDOW;
+            count = Math.min(WINDOW, count + 1);
+        }
+
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            final long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.min(count - 1, (int) Math.ceil(percentile / 100 * count) - 1)];
+        }
+    }
+}
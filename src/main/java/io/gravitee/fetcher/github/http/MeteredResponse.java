@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import io.gravitee.fetcher.github.metrics.FetcherMetrics;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.HttpFrame;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.net.NetSocket;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A response which records the size of its decoded body, and the time it took to receive it, however the body is
+ * read. The body handlers are called once the response has been inflated by the client, so the size of a compressed
+ * response on the wire is not known here.
+ *
+ * @author GraviteeSource Team
+ */
+class MeteredResponse implements HttpClientResponse {
+
+    private final HttpClientResponse response;
+    private final FetcherMetrics metrics;
+    private final FetcherMetrics.Tags tags;
+    private final long receivedAt = System.nanoTime();
+
+    private long decodedBytes;
+    private boolean recorded;
+
+    MeteredResponse(HttpClientResponse response, FetcherMetrics metrics, FetcherMetrics.Tags tags) {
+        this.response = response;
+        this.metrics = metrics;
+        this.tags = tags;
+    }
+
+    @Override
+    public HttpClientResponse handler(Handler<Buffer> handler) {
+        response.handler(handler == null ? null : chunk -> {
+            decodedBytes += chunk.length();
+            handler.handle(chunk);
+        });
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse endHandler(Handler<Void> endHandler) {
+        response.endHandler(endHandler == null ? null : v -> {
+            record();
+            endHandler.handle(v);
+        });
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse bodyHandler(Handler<Buffer> bodyHandler) {
+        // Same as the Vert.x implementation, but going through the metered handlers
+        if (bodyHandler != null) {
+            final Buffer body = Buffer.buffer();
+            handler(body::appendBuffer);
+            endHandler(v -> bodyHandler.handle(body));
+        } else {
+            handler(null);
+            endHandler(null);
+        }
+        return this;
+    }
+
+    private void record() {
+        if (!recorded) {
+            recorded = true;
+            metrics.recordPhase(tags, FetcherMetrics.Phase.BODY, System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+            metrics.recordDecodedBytes(tags, decodedBytes);
+        }
+    }
+
+    @Override
+    public HttpClientResponse exceptionHandler(Handler<Throwable> handler) {
+        response.exceptionHandler(handler);
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse pause() {
+        response.pause();
+        return this;
+    }
+
+    @Override
+    public HttpClientResponse resume() {
+        response.resume();
+        return this;
+    }
+
+    @Override
+    public HttpVersion version() {
+        return response.version();
+    }
+
+    @Override
+    public int statusCode() {
+        return response.statusCode();
+    }
+
+    @Override
+    public String statusMessage() {
+        return response.statusMessage();
+    }
+
+    @Override
+    public MultiMap headers() {
+        return response.headers();
+    }
+
+    @Override
+    public String getHeader(String headerName) {
+        return response.getHeader(headerName);
+    }
+
+    @Override
+    public String getHeader(CharSequence headerName) {
+        return response.getHeader(headerName);
+    }
+
+    @Override
+    public String getTrailer(String trailerName) {
+        return response.getTrailer(trailerName);
+    }
+
+    @Override
+    public MultiMap trailers() {
+        return response.trailers();
+    }
+
+    @Override
+    public List<String> cookies() {
+        return response.cookies();
+    }
+
+    @Override
+    public HttpClientResponse customFrameHandler(Handler<HttpFrame> handler) {
+        response.customFrameHandler(handler);
+        return this;
+    }
+
+    @Override
+    public NetSocket netSocket() {
+        return response.netSocket();
+    }
+
+    @Override
+    public HttpClientRequest request() {
+        return response.request();
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Closeable;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Paces the requests sent to GitHub according to the rate limit budget GitHub reports in the
+ * {@code X-RateLimit-*} and {@code Retry-After} response headers. A budget is tracked for each credential and host,
+ * and shared by every fetcher running on the same {@link Vertx} instance.
+ *
+ * Nothing is paced while the remaining budget is comfortable. Once it gets close to a reserve,
+ * {@link Priority#LOW low priority} requests are released by a token bucket whose refill rate spreads the remaining
+ * budget until the reset time, while {@link Priority#HIGH high priority} ones are still sent straight away. Once the
+ * budget falls below the reserve, high priority requests are paced the same way and low priority ones are deferred
+ * until the reset. Nothing is paced either as long as no budget is known.
+ *
+ * @author GraviteeSource Team
+ */
+public class RateLimitScheduler implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateLimitScheduler.class);
+
+    private static final String LIMIT_HEADER = "X-RateLimit-Limit";
+    private static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    private static final String RESET_HEADER = "X-RateLimit-Reset";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private static final int BURST = 10;
+    private static final double RESERVE_RATIO = 0.1;
+    private static final double PACING_RATIO = 0.2;
+
+    private static final Map<Vertx, RateLimitScheduler> schedulers = new ConcurrentHashMap<>();
+
+    public enum Priority {
+        HIGH,
+        LOW
+    }
+
+    private final Vertx vertx;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private RateLimitScheduler(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * Get the scheduler attached to the given {@link Vertx} instance, creating it on first access.
+     */
+    public static RateLimitScheduler get(Vertx vertx) {
+        return schedulers.computeIfAbsent(vertx, v -> {
+            RateLimitScheduler scheduler = new RateLimitScheduler(v);
+            if (v instanceof VertxInternal) {
+                ((VertxInternal) v).addCloseHook(scheduler);
+            }
+            return scheduler;
+        });
+    }
+
+    /**
+     * @param key the budget key, typically the host and the credential used to authenticate
+     * @return a future completed when the request is allowed to be sent
+     */
+    public CompletableFuture<Void> acquire(String key, Priority priority) {
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+        final Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(k));
+        synchronized (bucket) {
+            (priority == Priority.HIGH ? bucket.high : bucket.low).add(permit);
+        }
+        drain(bucket);
+        return permit;
+    }
+
+    /**
+     * Update the budget from the headers of a GitHub response.
+     */
+    public void update(String key, int statusCode, MultiMap headers) {
+        final Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(k));
+        final long now = System.currentTimeMillis();
+        synchronized (bucket) {
+            final Long limit = parseLong(headers.get(LIMIT_HEADER));
+            final Long remaining = parseLong(headers.get(REMAINING_HEADER));
+            final Long reset = parseLong(headers.get(RESET_HEADER));
+            final Long retryAfter = parseLong(headers.get(RETRY_AFTER_HEADER));
+            if (limit != null) {
+                bucket.limit = limit;
+            }
+            if (remaining != null && reset != null) {
+                bucket.remaining = remaining;
+                bucket.resetAt = reset * 1000;
+            }
+            if (retryAfter != null) {
+                bucket.blockedUntil = now + retryAfter * 1000;
+            } else if ((statusCode == 403 || statusCode == 429) && bucket.remaining == 0 && bucket.resetAt > now) {
+                bucket.blockedUntil = bucket.resetAt;
+            }
+        }
+        drain(bucket);
+    }
+
+    private void drain(Bucket bucket) {
+        final List<CompletableFuture<Void>> released = new ArrayList<>();
+        synchronized (bucket) {
+            final long now = System.currentTimeMillis();
+            if (bucket.resetAt > 0 && bucket.resetAt <= now) {
+                // The window is over, the budget is unknown until the next response
+                bucket.remaining = -1;
+                bucket.resetAt = 0;
+            }
+
+            long wakeUp = 0;
+            if (bucket.blockedUntil > now) {
+                wakeUp = bucket.blockedUntil;
+            } else if (bucket.remaining < 0) {
+                released.addAll(bucket.high);
+                released.addAll(bucket.low);
+                bucket.high.clear();
+                bucket.low.clear();
+                bucket.tokens = BURST;
+            } else {
+                final double rate = bucket.remaining / (double) Math.max(1, bucket.resetAt - now);
+                bucket.tokens = Math.min(BURST, bucket.tokens + (now - bucket.lastRefill) * rate);
+                final long reserve = bucket.limit > 0 ? (long) (bucket.limit * RESERVE_RATIO) : 0;
+                final long pacing = bucket.limit > 0 ? (long) (bucket.limit * PACING_RATIO) : 0;
+
+                // While the budget is comfortable, requests are not paced, high priority ones first
+                while (!bucket.high.isEmpty() && bucket.remaining > reserve) {
+                    bucket.remaining--;
+                    released.add(bucket.high.poll());
+                }
+                while (!bucket.low.isEmpty() && bucket.remaining > pacing) {
+                    bucket.remaining--;
+                    released.add(bucket.low.poll());
+                }
+                while (!bucket.high.isEmpty() || (!bucket.low.isEmpty() && bucket.remaining > reserve)) {
+                    if (bucket.remaining == 0) {
+                        wakeUp = bucket.resetAt;
+                        break;
+                    }
+                    if (bucket.tokens < 1) {
+                        wakeUp = now + Math.max(1, (long) Math.ceil((1 - bucket.tokens) / rate));
+                        break;
+                    }
+                    bucket.tokens--;
+                    bucket.remaining--;
+                    released.add(!bucket.high.isEmpty() ? bucket.high.poll() : bucket.low.poll());
+                }
+                if (wakeUp == 0 && !bucket.low.isEmpty()) {
+                    logger.debug("Rate limit budget of {} is low, deferring {} request(s) until reset", bucket.key, bucket.low.size());
+                    wakeUp = bucket.resetAt;
+                }
+            }
+            bucket.lastRefill = now;
+
+            if (wakeUp > 0 && (bucket.timerAt == 0 || wakeUp < bucket.timerAt)) {
+                if (bucket.timerId >= 0) {
+                    vertx.cancelTimer(bucket.timerId);
+                }
+                bucket.timerAt = wakeUp;
+                bucket.timerId = vertx.setTimer(Math.max(1, wakeUp - now), id -> {
+                    synchronized (bucket) {
+                        bucket.timerAt = 0;
+                        bucket.timerId = -1;
+                    }
+                    drain(bucket);
+                });
+            }
+        }
+        released.forEach(permit -> permit.complete(null));
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> completionHandler) {
+        schedulers.remove(vertx, this);
+        buckets.values().forEach(bucket -> {
+            final List<CompletableFuture<Void>> pending = new ArrayList<>();
+            synchronized (bucket) {
+                if (bucket.timerId >= 0) {
+                    vertx.cancelTimer(bucket.timerId);
+                }
+                pending.addAll(bucket.high);
+                pending.addAll(bucket.low);
+                bucket.high.clear();
+                bucket.low.clear();
+            }
+            pending.forEach(permit -> permit.completeExceptionally(new CancellationException("Vert.x is closing")));
+        });
+        buckets.clear();
+        completionHandler.handle(Future.succeededFuture());
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    private static final class Bucket {
+        private final String key;
+        private final Deque<CompletableFuture<Void>> high = new ArrayDeque<>();
+        private final Deque<CompletableFuture<Void>> low = new ArrayDeque<>();
+
+        private long limit = -1;
+        private long remaining = -1;
+        private long resetAt;
+        private long blockedUntil;
+        private double tokens = BURST;
+        private long lastRefill = System.currentTimeMillis();
+        private long timerId = -1;
+        private long timerAt;
+
+        Bucket(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import io.vertx.core.MultiMap;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Tells which failures of a request are worth retrying, and how long to wait before doing so.
+ *
+ * Connection failures, server errors, {@code 429} responses and {@code 403} responses sent when a (primary or
+ * secondary) rate limit is exceeded are retried. The delay is given by the {@code Retry-After} or
+ * {@code X-RateLimit-Reset} headers when present, otherwise it grows exponentially with each retry, with jitter so
+ * that failing clients do not retry all at once. No retry is attempted once the deadline of the request would be
+ * exceeded.
+ *
+ * @author GraviteeSource Team
+ */
+public class RetryPolicy {
+
+    private static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    private static final String RESET_HEADER = "X-RateLimit-Reset";
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private final int maxRetries;
+    private final long initialDelay;
+    private final long maxDelay;
+    private final long deadline;
+
+    /**
+     * @param maxRetries the maximum number of retries, {@code 0} to disable retries
+     * @param initialDelay the delay before the first retry, in milliseconds
+     * @param maxDelay the maximum delay between two retries, in milliseconds
+     * @param deadline the maximum time spent on a request, retries included, in milliseconds
+     */
+    public RetryPolicy(int maxRetries, long initialDelay, long maxDelay, long deadline) {
+        this.maxRetries = maxRetries;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.deadline = deadline;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public boolean isRetryable(int statusCode, MultiMap headers) {
+        if (statusCode >= 500 || statusCode == 429) {
+            return true;
+        }
+        return statusCode == 403 && (headers.contains(RETRY_AFTER_HEADER) || "0".equals(headers.get(REMAINING_HEADER)));
+    }
+
+    /**
+     * @param retry the number of retries already done
+     * @param headers the headers of the failed response, {@code null} if no response was received
+     * @param deadlineAt the time at which the request must be given up
+     * @return the delay before the next retry in milliseconds, or {@code -1} if the request must not be retried
+     */
+    public long nextDelay(int retry, MultiMap headers, long deadlineAt) {
+        if (retry >= maxRetries) {
+            return -1;
+        }
+
+        long delay = -1;
+        final long now = System.currentTimeMillis();
+        if (headers != null) {
+            final Long retryAfter = parseLong(headers.get(RETRY_AFTER_HEADER));
+            final Long reset = parseLong(headers.get(RESET_HEADER));
+            if (retryAfter != null) {
+                delay = retryAfter * 1000;
+            } else if (reset != null && "0".equals(headers.get(REMAINING_HEADER))) {
+                delay = Math.max(0, reset * 1000 - now);
+            }
+        }
+        if (delay < 0) {
+            // Exponential backoff with "equal jitter": half of the delay is fixed, the other half is random
+            final long backoff = Math.min(maxDelay, initialDelay << Math.min(retry, 30));
+            delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        }
+        return now + delay < deadlineAt ? delay : -1;
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+}
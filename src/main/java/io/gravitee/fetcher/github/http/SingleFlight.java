@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call is in flight for a given key, any other call for the same key
+ * is attached to it instead of being executed again.
+ *
+ * @param <K> the type of the keys identifying the calls
+ * @param <V> the type of the call results
+ *
+ * @author GraviteeSource Team
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Execute the call, or attach to the identical one currently in flight. Each caller gets its own future, so that
+     * completing or cancelling it does not affect the others.
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        final CompletableFuture<V> shared = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            return existing.thenApply(value -> value);
+        }
+
+        try {
+            call.get().whenComplete((value, throwable) -> {
+                inFlight.remove(key, shared);
+                if (throwable != null) {
+                    shared.completeExceptionally(throwable);
+                } else {
+                    shared.complete(value);
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.remove(key, shared);
+            shared.completeExceptionally(ex);
+        }
+        return shared.thenApply(value -> value);
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.metrics;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives the measures taken while fetching contents from GitHub. Implementations bridge them to a metrics library
+ * (Micrometer, Dropwizard...) and are looked up with the {@link java.util.ServiceLoader}, see {@link MetricsRegistry}.
+ *
+ * Methods are called from event loops, they must not block.
+ *
+ * @author GraviteeSource Team
+ */
+public interface FetcherMetrics {
+
+    enum Phase {
+        /**
+         * Waiting for the rate limit budget of the target to allow the request.
+         */
+        QUEUEING,
+        /**
+         * Opening a new connection, TLS handshake included. Requests sent on a pooled connection skip this phase.
+         */
+        CONNECT,
+        /**
+         * From the request being sent to the response headers being received.
+         */
+        TIME_TO_FIRST_BYTE,
+        /**
+         * From the response headers to the end of the response body.
+         */
+        BODY,
+        /**
+         * Parsing and decoding a response body into resources.
+         */
+        DECODE
+    }
+
+    enum CacheResult {
+        /**
+         * Served from a cache without any request.
+         */
+        HIT,
+        /**
+         * Not cached, or cached but modified since.
+         */
+        MISS,
+        /**
+         * Served from a cache after GitHub answered that it has not been modified.
+         */
+        REVALIDATED
+    }
+
+    void recordPhase(Tags tags, Phase phase, long duration, TimeUnit unit);
+
+    /**
+     * Record the size of a response body once decoded: compressed responses are measured after being inflated, so
+     * this is the size of the contents received, not the network traffic.
+     */
+    void recordDecodedBytes(Tags tags, long bytes);
+
+    void recordStatus(Tags tags, int statusCode);
+
+    /**
+     * Record a response which has been reached by following redirects.
+     */
+    void recordRedirect(Tags tags);
+
+    void recordCache(Tags tags, CacheResult result);
+
+    /**
+     * Record the last {@code X-RateLimit-Remaining} reported by GitHub for the credential of the tags.
+     */
+    void recordRateLimitRemaining(Tags tags, long remaining);
+
+    /**
+     * The dimensions of a measure.
+     */
+    final class Tags {
+        private final String host;
+        private final String repository;
+        private final String credential;
+
+        /**
+         * @param repository the repository as {@code owner/name}
+         * @param credential an identifier of the credential, which must not expose any secret
+         */
+        public Tags(String host, String repository, String credential) {
+            this.host = host;
+            this.repository = repository;
+            this.credential = credential;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public String getRepository() {
+            return repository;
+        }
+
+        public String getCredential() {
+            return credential;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Tags tags = (Tags) o;
+            return Objects.equals(host, tags.host) && Objects.equals(repository, tags.repository)
+                    && Objects.equals(credential, tags.credential);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, repository, credential);
+        }
+
+        @Override
+        public String toString() {
+            return "host=" + host + ", repository=" + repository + ", credential=" + credential;
+        }
+    }
+}
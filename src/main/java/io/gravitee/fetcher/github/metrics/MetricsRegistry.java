@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * Holds the process-wide {@link FetcherMetrics}. The first implementation declared in a
+ * {@code META-INF/services/io.gravitee.fetcher.github.metrics.FetcherMetrics} file is used, and the in-memory
+ * {@link SimpleFetcherMetrics} otherwise. An implementation can also be set programmatically.
+ *
+ * @author GraviteeSource Team
+ */
+public final class MetricsRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static volatile FetcherMetrics metrics;
+
+    private MetricsRegistry() {
+    }
+
+    public static FetcherMetrics get() {
+        FetcherMetrics current = metrics;
+        if (current == null) {
+            synchronized (MetricsRegistry.class) {
+                current = metrics;
+                if (current == null) {
+                    current = load();
+                    metrics = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param fetcherMetrics the implementation to use from now on, {@code null} to look it up again
+     */
+    public static void set(FetcherMetrics fetcherMetrics) {
+        metrics = fetcherMetrics;
+    }
+
+    private static FetcherMetrics load() {
+        final Iterator<FetcherMetrics> implementations =
+                ServiceLoader.load(FetcherMetrics.class, MetricsRegistry.class.getClassLoader()).iterator();
+        if (implementations.hasNext()) {
+            final FetcherMetrics implementation = implementations.next();
+            logger.info("Recording GitHub fetcher metrics with {}", implementation.getClass().getName());
+            return implementation;
+        }
+        return new SimpleFetcherMetrics();
+    }
+}
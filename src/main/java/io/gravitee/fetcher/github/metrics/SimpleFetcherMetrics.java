@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics in memory, so that they can be read without any metrics library.
+ *
+ * @author GraviteeSource Team
+ */
+public class SimpleFetcherMetrics implements FetcherMetrics {
+
+    private final Map<Tags, Meters> meters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> rateLimitRemaining = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordPhase(Tags tags, Phase phase, long duration, TimeUnit unit) {
+        meters(tags).phases.get(phase).record(unit.toNanos(duration));
+    }
+
+    @Override
+    public void recordDecodedBytes(Tags tags, long bytes) {
+        meters(tags).decodedBytes.add(bytes);
+    }
+
+    @Override
+    public void recordStatus(Tags tags, int statusCode) {
+        meters(tags).statuses.computeIfAbsent(statusCode, status -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void recordRedirect(Tags tags) {
+        meters(tags).redirects.increment();
+    }
+
+    @Override
+    public void recordCache(Tags tags, CacheResult result) {
+        meters(tags).cache.get(result).increment();
+    }
+
+    @Override
+    public void recordRateLimitRemaining(Tags tags, long remaining) {
+        rateLimitRemaining.computeIfAbsent(tags.getHost() + '|' + tags.getCredential(), key -> new AtomicLong())
+                .set(remaining);
+    }
+
+    /**
+     * @return the durations of the phase, or {@code null} if it has never been recorded
+     */
+    public Histogram getPhase(Tags tags, Phase phase) {
+        final Meters tagged = meters.get(tags);
+        return tagged == null || tagged.phases.get(phase).getCount() == 0 ? null : tagged.phases.get(phase);
+    }
+
+    public long getDecodedBytes(Tags tags) {
+        final Meters tagged = meters.get(tags);
+        return tagged == null ? 0 : tagged.decodedBytes.sum();
+    }
+
+    public long getStatusCount(Tags tags, int statusCode) {
+        final Meters tagged = meters.get(tags);
+        final LongAdder count = tagged == null ? null : tagged.statuses.get(statusCode);
+        return count == null ? 0 : count.sum();
+    }
+
+    public long getRedirects(Tags tags) {
+        final Meters tagged = meters.get(tags);
+        return tagged == null ? 0 : tagged.redirects.sum();
+    }
+
+    public long getCacheCount(Tags tags, CacheResult result) {
+        final Meters tagged = meters.get(tags);
+        return tagged == null ? 0 : tagged.cache.get(result).sum();
+    }
+
+    /**
+     * @return the last rate limit budget reported for the host and credential, or {@code -1} if unknown
+     */
+    public long getRateLimitRemaining(String host, String credential) {
+        final AtomicLong remaining = rateLimitRemaining.get(host + '|' + credential);
+        return remaining == null ? -1 : remaining.get();
+    }
+
+    private Meters meters(Tags tags) {
+        return meters.computeIfAbsent(tags, t -> new Meters());
+    }
+
+    private static final class Meters {
+        private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+        private final LongAdder decodedBytes = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder redirects = new LongAdder();
+        private final Map<CacheResult, LongAdder> cache = new EnumMap<>(CacheResult.class);
+
+        Meters() {
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, new Histogram());
+            }
+            for (CacheResult result : CacheResult.values()) {
+                cache.put(result, new LongAdder());
+            }
+        }
+    }
+
+    /**
+     * A lock-free histogram of durations, with one bucket per power of two nanoseconds.
+     */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            final long duration = Math.max(0, nanos);
+            buckets[64 - Long.numberOfLeadingZeros(duration) - (duration == 0 ? 0 : 1)].increment();
+            count.increment();
+            total.add(duration);
+            max.accumulateAndGet(duration, Math::max);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotal(TimeUnit unit) {
+            return unit.convert(total.sum(), TimeUnit.NANOSECONDS);
+        }
+
+        public long getMax(TimeUnit unit) {
+            return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return an upper bound of the given percentile of the durations, precise to a factor of two
+         */
+        public long getPercentile(double percentile, TimeUnit unit) {
+            final long target = (long) Math.ceil(percentile / 100 * count.sum());
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i].sum();
+                if (seen >= target && seen > 0) {
+                    final long upperBound = i >= 62 ? Long.MAX_VALUE : (2L << i) - 1;
+                    return unit.convert(Math.min(upperBound, max.get()), TimeUnit.NANOSECONDS);
+                }
+            }
+            return 0;
+        }
+    }
+}
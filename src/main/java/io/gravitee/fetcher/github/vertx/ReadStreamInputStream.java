@@ -0,0 +1,167 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.vertx;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.ReadStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A blocking {@link InputStream} fed by a Vert.x {@link ReadStream}, so that the bytes of a response can be processed
+ * by stream-oriented code (e.g. decompression) on a worker thread as they arrive. The read stream is paused whenever
+ * more than a given amount of bytes are waiting to be read, and resumed once the reader has caught up.
+ *
+ * The stream must be read from a thread which is not the event loop of the given {@link Context}.
+ *
+ * @author GraviteeSource Team
+ */
+public class ReadStreamInputStream extends InputStream {
+
+    private static final Buffer END = Buffer.buffer();
+
+    private final Context context;
+    private final ReadStream<Buffer> stream;
+    private final long highWaterMark;
+    private final long timeout;
+    private final LinkedBlockingQueue<Buffer> chunks = new LinkedBlockingQueue<>();
+
+    private long queued;
+    private boolean paused;
+    private volatile Throwable failure;
+    private volatile boolean closed;
+
+    private Buffer current;
+    private int position;
+    private boolean ended;
+
+    /**
+     * @param context the context the read stream handlers are called on
+     * @param stream the stream to read from
+     * @param highWaterMark the number of queued bytes above which the read stream is paused
+     * @param timeout the maximum time to wait for a chunk, in milliseconds
+     */
+    public ReadStreamInputStream(Context context, ReadStream<Buffer> stream, long highWaterMark, long timeout) {
+        this.context = context;
+        this.stream = stream;
+        this.highWaterMark = highWaterMark;
+        this.timeout = timeout;
+
+        stream.handler(this::onChunk);
+        stream.endHandler(v -> chunks.offer(END));
+        stream.exceptionHandler(throwable -> {
+            failure = throwable;
+            chunks.offer(END);
+        });
+    }
+
+    private void onChunk(Buffer chunk) {
+        if (closed) {
+            return;
+        }
+        synchronized (this) {
+            queued += chunk.length();
+            if (queued > highWaterMark && !paused) {
+                paused = true;
+                stream.pause();
+            }
+        }
+        chunks.offer(chunk);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current.getByte(position++) & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        final int read = Math.min(length, current.length() - position);
+        current.getBytes(position, position + read, bytes, offset);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return current == null ? 0 : current.length() - position;
+    }
+
+    /**
+     * Stop reading: the queued chunks are released and the ones still to come are dropped. A paused read stream is
+     * not resumed, the caller is expected to abort the underlying request if it has not ended.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ended = true;
+        current = null;
+        chunks.clear();
+    }
+
+    private boolean nextChunk() throws IOException {
+        while (current == null || position >= current.length()) {
+            if (ended) {
+                return false;
+            }
+            final Buffer chunk;
+            try {
+                chunk = timeout > 0 ? chunks.poll(timeout, TimeUnit.MILLISECONDS) : chunks.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for content");
+            }
+            if (chunk == null) {
+                throw new IOException("No content received since " + timeout + " ms");
+            }
+            if (chunk == END) {
+                ended = true;
+                if (failure != null) {
+                    throw new IOException(failure.getMessage(), failure);
+                }
+                return false;
+            }
+            consumed(chunk.length());
+            current = chunk;
+            position = 0;
+        }
+        return true;
+    }
+
+    private void consumed(int length) {
+        synchronized (this) {
+            queued -= length;
+            if (paused && queued <= highWaterMark / 2) {
+                paused = false;
+                context.runOnContext(v -> stream.resume());
+            }
+        }
+    }
+}
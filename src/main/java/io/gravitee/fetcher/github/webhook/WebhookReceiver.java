@@ -0,0 +1,338 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.webhook;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.gravitee.common.http.HttpStatusCode;
+import io.gravitee.fetcher.github.GitHubFetcherConfiguration;
+import io.netty.buffer.ByteBufInputStream;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Closeable;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.impl.VertxInternal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * A lightweight HTTP endpoint receiving GitHub {@code push} webhooks, so that fetched contents are refreshed as soon
+ * as they are pushed instead of being polled for.
+ *
+ * Fetchers register their configuration along with a {@link Listener}, which is held weakly: a registration lasts as
+ * long as its listener is referenced elsewhere, typically by the fetcher which registered it. For every push with a valid
+ * {@code X-Hub-Signature-256} HMAC signature, the listeners of the pushed repository and ref are notified, and the
+ * ones whose file has been added, modified or removed by one of the pushed commits are told so. One receiver is
+ * started per {@link Vertx} instance, and stopped when the {@link Vertx} instance is closed.
+ *
+ * @author GraviteeSource Team
+ */
+public class WebhookReceiver implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookReceiver.class);
+
+    private static final String EVENT_HEADER = "X-GitHub-Event";
+    private static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+    private static final String SIGNATURE_PREFIX = "sha256=";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final String PUSH_EVENT = "push";
+    private static final String BRANCH_PREFIX = "refs/heads/";
+    private static final String TAG_PREFIX = "refs/tags/";
+    private static final Pattern COMMIT_SHA_PATTERN = Pattern.compile("[0-9a-fA-F]{40}");
+
+    // GitHub does not deliver payloads above 25 MB
+    private static final long MAX_PAYLOAD_SIZE = 25 * 1024 * 1024;
+
+    private static final Map<Vertx, WebhookReceiver> receivers = new ConcurrentHashMap<>();
+
+    private final Vertx vertx;
+    private final ObjectMapper mapper;
+    private final String path;
+    private final byte[] secret;
+    private final HttpServer server;
+    private final CompletableFuture<Integer> listening = new CompletableFuture<>();
+    private final Map<Listener, GitHubFetcherConfiguration> registrations = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public interface Listener {
+
+        /**
+         * Called when the ref of the registered configuration has been pushed, whatever the files changed.
+         */
+        void pushed();
+
+        /**
+         * Called when the registered file has been added or modified by a push.
+         */
+        void modified();
+
+        /**
+         * Called when the registered file has been removed by a push.
+         */
+        void removed();
+    }
+
+    private WebhookReceiver(Vertx vertx, ObjectMapper mapper, String path, String secret) {
+        this.vertx = vertx;
+        this.mapper = mapper;
+        this.path = path;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.server = vertx.createHttpServer();
+    }
+
+    /**
+     * Get the receiver attached to the given {@link Vertx} instance, starting it on first access. Once started, the
+     * other settings are ignored.
+     *
+     * @param secret the secret configured on the GitHub webhooks, used to verify the payloads signature
+     */
+    public static WebhookReceiver getOrStart(Vertx vertx, ObjectMapper mapper, String host, int port, String path,
+                                             String secret) {
+        return receivers.computeIfAbsent(vertx, v -> {
+            WebhookReceiver receiver = new WebhookReceiver(v, mapper, path, secret);
+            receiver.listen(host, port);
+            if (v instanceof VertxInternal) {
+                ((VertxInternal) v).addCloseHook(receiver);
+            }
+            return receiver;
+        });
+    }
+
+    private void listen(String host, int port) {
+        server.requestHandler(this::handle).listen(port, host, result -> {
+            if (result.succeeded()) {
+                logger.info("Listening to GitHub webhooks on {}:{}{}", host, result.result().actualPort(), path);
+                listening.complete(result.result().actualPort());
+            } else {
+                logger.error("Unable to listen to GitHub webhooks on {}:{}", host, port, result.cause());
+                listening.completeExceptionally(result.cause());
+            }
+        });
+    }
+
+    /**
+     * @return a future completed with the port the receiver listens to, once started
+     */
+    public CompletableFuture<Integer> listening() {
+        return listening;
+    }
+
+    /**
+     * Register a configuration to be notified of the pushes changing it. The listener is only weakly referenced, the
+     * caller must keep a reference to it as long as it wants to be notified.
+     */
+    public void register(GitHubFetcherConfiguration configuration, Listener listener) {
+        registrations.put(listener, configuration);
+    }
+
+    public void unregister(Listener listener) {
+        registrations.remove(listener);
+    }
+
+    private void handle(HttpServerRequest request) {
+        if (!path.equals(request.path())) {
+            request.response().setStatusCode(HttpStatusCode.NOT_FOUND_404).end();
+            return;
+        }
+        if (request.method() != HttpMethod.POST) {
+            request.response().setStatusCode(HttpStatusCode.METHOD_NOT_ALLOWED_405).end();
+            return;
+        }
+        final String contentLength = request.getHeader("Content-Length");
+        if (contentLength != null && parseLong(contentLength) > MAX_PAYLOAD_SIZE) {
+            request.response().setStatusCode(HttpStatusCode.REQUEST_ENTITY_TOO_LARGE_413).end();
+            return;
+        }
+
+        // Chunked payloads are bounded as well
+        final Buffer body = Buffer.buffer();
+        request.handler(chunk -> {
+            if (body.length() + chunk.length() > MAX_PAYLOAD_SIZE) {
+                if (!request.response().ended()) {
+                    request.response().setStatusCode(HttpStatusCode.REQUEST_ENTITY_TOO_LARGE_413).end();
+                    request.connection().close();
+                }
+                return;
+            }
+            body.appendBuffer(chunk);
+        });
+        request.endHandler(v -> {
+            if (!request.response().ended()) {
+                onPayload(request, body);
+            }
+        });
+    }
+
+    private void onPayload(HttpServerRequest request, Buffer body) {
+        if (!isSignatureValid(request.getHeader(SIGNATURE_HEADER), body)) {
+            logger.warn("Rejecting GitHub webhook with an invalid signature from {}", request.remoteAddress());
+            request.response().setStatusCode(HttpStatusCode.UNAUTHORIZED_401).end();
+            return;
+        }
+        if (!PUSH_EVENT.equals(request.getHeader(EVENT_HEADER))) {
+            // Ping and other events are acknowledged but ignored
+            request.response().setStatusCode(HttpStatusCode.NO_CONTENT_204).end();
+            return;
+        }
+        try {
+            onPush(mapper.readTree((InputStream) new ByteBufInputStream(body.getByteBuf())));
+            request.response().setStatusCode(HttpStatusCode.NO_CONTENT_204).end();
+        } catch (IOException ioe) {
+            logger.warn("Unable to read GitHub push webhook payload", ioe);
+            request.response().setStatusCode(HttpStatusCode.BAD_REQUEST_400).end();
+        }
+    }
+
+    private boolean isSignatureValid(String signature, Buffer body) {
+        if (signature == null || !signature.startsWith(SIGNATURE_PREFIX)) {
+            return false;
+        }
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, HMAC_ALGORITHM));
+            final byte[] expected = mac.doFinal(body.getBytes());
+            final byte[] actual = parseHex(signature.substring(SIGNATURE_PREFIX.length()));
+            // Constant time comparison
+            return actual != null && MessageDigest.isEqual(expected, actual);
+        } catch (GeneralSecurityException gse) {
+            logger.error("Unable to verify GitHub webhook signature", gse);
+            return false;
+        }
+    }
+
+    private void onPush(JsonNode payload) {
+        final String ref = payload.path("ref").asText();
+        final JsonNode repository = payload.path("repository");
+        final String fullName = repository.path("full_name").asText();
+        final String defaultBranch = repository.path("default_branch").asText();
+
+        // Commits are listed from the oldest to the newest, the last one changing a file gives its state
+        final Map<String, Boolean> exists = new HashMap<>();
+        for (JsonNode commit : payload.path("commits")) {
+            commit.path("added").forEach(file -> exists.put(file.asText(), true));
+            commit.path("modified").forEach(file -> exists.put(file.asText(), true));
+            commit.path("removed").forEach(file -> exists.put(file.asText(), false));
+        }
+        final Set<String> modified = new HashSet<>();
+        final Set<String> removed = new HashSet<>();
+        exists.forEach((file, present) -> (present ? modified : removed).add(file));
+        logger.debug("Push on {} {}: {} file(s) modified, {} removed", fullName, ref, modified.size(), removed.size());
+
+        // Listeners are notified outside of the lock, they may register or fetch again
+        final List<Map.Entry<Listener, GitHubFetcherConfiguration>> entries;
+        synchronized (registrations) {
+            entries = new ArrayList<>(registrations.entrySet());
+        }
+        entries.forEach(registration -> {
+            final GitHubFetcherConfiguration configuration = registration.getValue();
+            if (!fullName.equalsIgnoreCase(configuration.getOwner() + '/' + configuration.getRepository())
+                    || !matchesRef(configuration.getBranchOrTag(), ref, defaultBranch)) {
+                return;
+            }
+            final String filepath = configuration.getFilepath().startsWith("/")
+                    ? configuration.getFilepath().substring(1) : configuration.getFilepath();
+            notify(registration.getKey(), Listener::pushed);
+            if (matchesPath(filepath, modified)) {
+                notify(registration.getKey(), Listener::modified);
+            } else if (matchesPath(filepath, removed)) {
+                notify(registration.getKey(), Listener::removed);
+            }
+        });
+    }
+
+    private static boolean matchesRef(String configured, String pushed, String defaultBranch) {
+        if (configured == null || configured.isEmpty()) {
+            return pushed.equals(BRANCH_PREFIX + defaultBranch);
+        }
+        if (COMMIT_SHA_PATTERN.matcher(configured).matches()) {
+            // A commit never changes
+            return false;
+        }
+        return pushed.equals(configured) || pushed.equals(BRANCH_PREFIX + configured) || pushed.equals(TAG_PREFIX + configured);
+    }
+
+    private static boolean matchesPath(String filepath, Set<String> paths) {
+        if (paths.contains(filepath)) {
+            return true;
+        }
+        // The configured path may be a directory
+        final String directory = filepath.endsWith("/") ? filepath : filepath + '/';
+        return paths.stream().anyMatch(path -> path.startsWith(directory));
+    }
+
+    private void notify(Listener listener, Consumer<Listener> notification) {
+        try {
+            notification.accept(listener);
+        } catch (Exception ex) {
+            logger.warn("Unable to handle GitHub push notification", ex);
+        }
+    }
+
+    @Override
+    public void close(Handler<AsyncResult<Void>> completionHandler) {
+        receivers.remove(vertx, this);
+        registrations.clear();
+        server.close(closed -> completionHandler.handle(Future.succeededFuture()));
+    }
+
+    private static byte[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            final int high = Character.digit(hex.charAt(2 * i), 16);
+            final int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) + low);
+        }
+        return bytes;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+}
@@ -17,16 +17,59 @@ package io.gravitee.fetcher.github;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import io.gravitee.fetcher.api.Fetcher;
 import io.gravitee.fetcher.api.FetcherException;
+import io.gravitee.fetcher.api.Resource;
+import io.gravitee.fetcher.github.cache.CommitContentCache;
+import io.gravitee.fetcher.github.cache.ConditionalCache;
+import io.gravitee.fetcher.github.cache.RedirectCache;
+import io.gravitee.fetcher.github.cache.RepositoryHeadCache;
+import io.gravitee.fetcher.github.http.CircuitBreaker;
+import io.gravitee.fetcher.github.http.HttpClientRegistry;
+import io.gravitee.fetcher.github.http.LatencyTracker;
+import io.gravitee.fetcher.github.metrics.FetcherMetrics;
+import io.gravitee.fetcher.github.metrics.MetricsRegistry;
+import io.gravitee.fetcher.github.metrics.SimpleFetcherMetrics;
+import io.gravitee.fetcher.github.webhook.WebhookReceiver;
 import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.net.PemKeyCertOptions;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
@@ -42,6 +85,9 @@ public class GitHubFetcherTest {
     @Rule
     public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private GitHubFetcher fetcher = new GitHubFetcher(null);
 
     private Vertx vertx = Vertx.vertx();
@@ -53,6 +99,21 @@ public class GitHubFetcherTest {
         ReflectionTestUtils.setField(fetcher, "mapper", mapper);
     }
 
+    @After
+    public void tearDown() throws Exception {
+        ConditionalCache.getInstance().clear();
+        CommitContentCache.getInstance().clear();
+        RepositoryHeadCache.getInstance().clear();
+        RedirectCache.getInstance().clear();
+        LatencyTracker.getInstance().clear();
+        CircuitBreaker.clear();
+
+        // The HTTP clients, rate limit schedulers and webhook receivers are closed along with their Vert.x instance
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(result -> closed.complete(null));
+        closed.get(10, TimeUnit.SECONDS);
+    }
+
     @Test
     public void shouldNotFetchWithoutContent() throws FetcherException {
         stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
@@ -138,6 +199,1496 @@ public class GitHubFetcherTest {
         assertThat(decoded).isEqualTo(content);
     }
 
+    @Test
+    public void shouldFetchLineWrappedBase64Content() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            content.append("Gravitee.io is awesome! ");
+        }
+        String encoded = Base64.getMimeEncoder(60, "\n".getBytes()).encodeToString(content.toString().getBytes())
+                .replace("\n", "\\n");
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"name\": \"file\", \"content\": \""+encoded+"\", \"html_url\": \"https://github.com/owner/myrepo/blob/sha1/path/to/file\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        Resource resource = fetcher.fetch();
+
+        InputStream fetch = resource.getContent();
+        assertThat(fetch).isNotNull();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content.toString());
+        assertThat(resource.getMetadata())
+                .containsEntry("name", "file")
+                .containsEntry(Fetcher.EDIT_URL_PROPERTY_KEY, "http://localhost:" + wireMockRule.port() + "/owner/myrepo/edit/sha1/path/to/file")
+                .doesNotContainKey("content");
+    }
+
+    @Test
+    public void shouldFetchRawContent() throws Exception {
+        String content = "Gravitee.io is awesome!";
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .withHeader("Accept", equalTo("application/vnd.github.v3.raw"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "W/\"3D21EC53A331A6F037A91C368710B99387D012C1--gzip\"")
+                        .withBody(content)));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        config.setFetchRaw(true);
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        Resource resource = fetcher.fetch();
+
+        InputStream fetch = resource.getContent();
+        assertThat(fetch).isNotNull();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+        assertThat(resource.getMetadata())
+                .containsEntry("name", "file")
+                .containsEntry("sha", "3d21ec53a331a6f037a91c368710b99387d012c1")
+                .containsEntry(Fetcher.EDIT_URL_PROPERTY_KEY, "http://localhost:" + wireMockRule.port() + "/owner/myrepo/edit/sha1/path/to/file");
+    }
+
+    @Test
+    public void shouldKeepBlobShaOfRawContentServedFromCommitCache() throws Exception {
+        String commit = "5b0f3c2e1d4a6b8c9e7f1a2b3c4d5e6f7a8b9c0d";
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/raw-file?ref=" + commit))
+                .withHeader("Accept", equalTo("application/vnd.github.v3.raw"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"3d21ec53a331a6f037a91c368710b99387d012c1\"")
+                        .withBody("Gravitee.io is awesome!")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/raw-file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag(commit);
+        config.setFetchRaw(true);
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        assertThat(fetcher.fetch().getMetadata()).containsEntry("sha", "3d21ec53a331a6f037a91c368710b99387d012c1");
+
+        // The validators of the response are gone, but the content at that commit is still known
+        ConditionalCache.getInstance().clear();
+        assertThat(fetcher.fetch().getMetadata()).containsEntry("sha", "3d21ec53a331a6f037a91c368710b99387d012c1");
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/raw-file?ref=" + commit)));
+    }
+
+    @Test
+    public void shouldOnlyReplaceBlobSegmentInEditUrl() throws Exception {
+        String htmlUrl = "https://github.com/blob/blobstore/blob/sha1/blob/file";
+        stubFor(get(urlEqualTo("/repos/blob/blobstore/contents/blob/file?ref=sha1"))
+                .withHeader("Accept", equalTo("application/vnd.github.v3.raw"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("content")));
+        stubFor(get(urlEqualTo("/repos/blob/blobstore/contents/blob/file?ref=sha1"))
+                .withHeader("Accept", equalTo("application/vnd.github.v3+json"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"html_url\": \"" + htmlUrl + "\", \"content\": \"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("blob");
+        config.setRepository("blobstore");
+        config.setFilepath("/blob/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        config.setFetchRaw(true);
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        assertThat(fetcher.fetch().getMetadata())
+                .containsEntry("html_url", "http://localhost:" + wireMockRule.port() + "/blob/blobstore/blob/sha1/blob/file")
+                .containsEntry(Fetcher.EDIT_URL_PROPERTY_KEY, "http://localhost:" + wireMockRule.port() + "/blob/blobstore/edit/sha1/blob/file");
+
+        // Both modes agree on the edit URL
+        config.setFetchRaw(false);
+        assertThat(fetcher.fetch().getMetadata())
+                .containsEntry("html_url", htmlUrl)
+                .containsEntry(Fetcher.EDIT_URL_PROPERTY_KEY, "http://localhost:" + wireMockRule.port() + "/blob/blobstore/edit/sha1/blob/file");
+    }
+
+    @Test
+    public void shouldFetchLargeContentFromBlob() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("Gravitee.io is awesome! ");
+        }
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"sha\": \"3d21ec53a331a6f037a91c368710b99387d012c1\", \"size\": " + content.length() + ", \"encoding\": \"none\", \"content\": \"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/git/blobs/3d21ec53a331a6f037a91c368710b99387d012c1"))
+                .withHeader("Accept", equalTo("application/vnd.github.v3.raw"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(content.toString())));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "httpClientSpoolThreshold", 1_024L);
+
+        try (InputStream fetch = fetcher.fetch().getContent()) {
+            assertThat(fetch).isNotNull();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] bytes = new byte[4096];
+            int n;
+            while ((n = fetch.read(bytes)) != -1) {
+                out.write(bytes, 0, n);
+            }
+            assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(content.toString());
+        }
+    }
+
+    @Test
+    public void shouldFetchSeveralFilesAtOnce() throws Exception {
+        stubFor(post(urlEqualTo("/graphql"))
+                .withRequestBody(matching(".*\"f0\":\"sha1:docs/README.md\".*"))
+                .withRequestBody(matching(".*\"f1\":\"sha1:docs/missing.md\".*"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"data\": {\"repository\": {" +
+                                "\"f0\": {\"oid\": \"3d21ec53a331a6f037a91c368710b99387d012c1\", \"byteSize\": 23, \"isBinary\": false, \"isTruncated\": false, \"text\": \"Gravitee.io is awesome!\"}," +
+                                "\"f1\": null}}}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        Map<String, Resource> resources = fetcher.fetch(Arrays.asList("/docs/README.md", "/docs/missing.md"));
+
+        assertThat(resources).containsOnlyKeys("/docs/README.md");
+        Resource resource = resources.get("/docs/README.md");
+        InputStream fetch = resource.getContent();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo("Gravitee.io is awesome!");
+        assertThat(resource.getMetadata()).containsEntry("sha", "3d21ec53a331a6f037a91c368710b99387d012c1");
+        verify(1, postRequestedFor(urlEqualTo("/graphql")));
+    }
+
+    @Test
+    public void shouldFetchDirectory() throws Exception {
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/git/trees/sha1?recursive=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"sha\": \"sha1\", \"truncated\": false, \"tree\": [" +
+                                "{\"path\": \"README.md\", \"type\": \"blob\", \"sha\": \"a1\", \"size\": 6}," +
+                                "{\"path\": \"docs\", \"type\": \"tree\", \"sha\": \"t1\"}," +
+                                "{\"path\": \"docs/index.md\", \"type\": \"blob\", \"sha\": \"b1\", \"size\": 5}," +
+                                "{\"path\": \"docs/api/users.md\", \"type\": \"blob\", \"sha\": \"b2\", \"size\": 5}," +
+                                "{\"path\": \"docs/api/draft.md\", \"type\": \"blob\", \"sha\": \"b3\", \"size\": 5}," +
+                                "{\"path\": \"docs/logo.png\", \"type\": \"blob\", \"sha\": \"b4\", \"size\": 5}]}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/git/blobs/b1"))
+                .willReturn(aResponse().withStatus(200).withBody("index")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/git/blobs/b2"))
+                .willReturn(aResponse().withStatus(200).withBody("users")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/docs");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        config.setIncludes(Arrays.asList("**.md"));
+        config.setExcludes(Arrays.asList("**draft.md"));
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        Map<String, Resource> resources = fetcher.fetchDirectory();
+
+        assertThat(resources).containsOnlyKeys("/docs/index.md", "/docs/api/users.md");
+        InputStream fetch = resources.get("/docs/api/users.md").getContent();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo("users");
+        assertThat(resources.get("/docs/index.md").getMetadata()).containsEntry("sha", "b1");
+    }
+
+    @Test
+    public void shouldFetchArchive() throws Exception {
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("owner-myrepo-3d21ec5/README.md", "readme");
+        files.put("owner-myrepo-3d21ec5/docs/index.md", "index");
+        files.put("owner-myrepo-3d21ec5/docs/api/users.md", "users");
+        files.put("owner-myrepo-3d21ec5/docs/logo.png", "logo");
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/tarball/sha1"))
+                .willReturn(aResponse()
+                        .withStatus(302)
+                        .withHeader("Location", "http://localhost:" + wireMockRule.port() + "/codeload/owner/myrepo/legacy.tar.gz/sha1")));
+        stubFor(get(urlEqualTo("/codeload/owner/myrepo/legacy.tar.gz/sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(tarball(files))));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/docs");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        config.setIncludes(Arrays.asList("**.md"));
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        Map<String, Resource> resources = fetcher.fetchArchive();
+
+        assertThat(resources).containsOnlyKeys("/docs/index.md", "/docs/api/users.md");
+        InputStream fetch = resources.get("/docs/api/users.md").getContent();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo("users");
+    }
+
+    @Test
+    public void shouldReleaseConnectionWhenArchiveIsCorrupted() throws Exception {
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+        byte[] corrupted = new byte[4 * 1024 * 1024];
+        Arrays.fill(corrupted, (byte) 'x');
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/tarball/sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(corrupted)));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/docs?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/docs");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "httpClientMaxPoolSize", 1);
+        ReflectionTestUtils.setField(fetcher, "httpClientRetryMaxRetries", 0);
+
+        try {
+            fetcher.fetchArchive();
+            fail("Fetching a corrupted archive does not throw Exception");
+        } catch (FetcherException fe) {
+            // Expected
+        }
+
+        // The only connection of the pool is not held by the half-read archive
+        assertThat(fetcher.fetchAsync().toCompletableFuture().get(5, TimeUnit.SECONDS).getContent()).isNotNull();
+    }
+
+    private static byte[] tarball(Map<String, String> files) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                byte[] content = file.getValue().getBytes(StandardCharsets.UTF_8);
+                byte[] header = new byte[512];
+                byte[] name = file.getKey().getBytes(StandardCharsets.UTF_8);
+                System.arraycopy(name, 0, header, 0, name.length);
+                byte[] size = String.format("%011o", content.length).getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(size, 0, header, 124, size.length);
+                header[156] = '0';
+                byte[] magic = "ustar".getBytes(StandardCharsets.US_ASCII);
+                System.arraycopy(magic, 0, header, 257, magic.length);
+                gzip.write(header);
+                gzip.write(content);
+                gzip.write(new byte[(512 - content.length % 512) % 512]);
+            }
+            gzip.write(new byte[1024]);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void shouldWaitForRateLimitReset() throws Exception {
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+        long reset = System.currentTimeMillis() / 1000 + 2;
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("X-RateLimit-Limit", "60")
+                        .withHeader("X-RateLimit-Remaining", "0")
+                        .withHeader("X-RateLimit-Reset", String.valueOf(reset))
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(reset * 1000);
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+    }
+
+    @Test
+    public void shouldNotDelayHighPriorityFetchesWhileBudgetIsLeft() throws Exception {
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+        long reset = System.currentTimeMillis() / 1000 + 3600;
+
+        stubFor(get(urlMatching("/repos/owner/myrepo/contents/docs/.*\\?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("X-RateLimit-Limit", "5000")
+                        .withHeader("X-RateLimit-Remaining", "4000")
+                        .withHeader("X-RateLimit-Reset", String.valueOf(reset))
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+
+        // Spread over an hour, the budget would only allow a request every second once the burst is consumed
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 30; i++) {
+            GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+            config.setOwner("owner");
+            config.setRepository("myrepo");
+            config.setFilepath("/docs/file-" + i + ".md");
+            config.setGithubUrl("http://localhost:" + wireMockRule.port());
+            config.setBranchOrTag("sha1");
+            ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+            ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+            assertThat(fetcher.fetch().getContent()).isNotNull();
+        }
+
+        assertThat(System.currentTimeMillis() - start).isLessThan(5_000);
+        verify(30, getRequestedFor(urlMatching("/repos/owner/myrepo/contents/docs/.*")));
+    }
+
+    @Test
+    public void shouldNotDelayDirectoryFetchWhileBudgetIsLeft() throws Exception {
+        long reset = System.currentTimeMillis() / 1000 + 3600;
+        StringBuilder tree = new StringBuilder("{\"sha\": \"sha1\", \"truncated\": false, \"tree\": [");
+        for (int i = 0; i < 30; i++) {
+            tree.append(i == 0 ? "" : ",")
+                    .append("{\"path\": \"docs/file-").append(i).append(".md\", \"type\": \"blob\", \"sha\": \"d")
+                    .append(i).append("\", \"size\": 5}");
+        }
+        tree.append("]}");
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/git/trees/sha1?recursive=1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("X-RateLimit-Limit", "5000")
+                        .withHeader("X-RateLimit-Remaining", "4900")
+                        .withHeader("X-RateLimit-Reset", String.valueOf(reset))
+                        .withBody(tree.toString())));
+        stubFor(get(urlMatching("/repos/owner/myrepo/git/blobs/d.*"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("X-RateLimit-Limit", "5000")
+                        .withHeader("X-RateLimit-Remaining", "4899")
+                        .withHeader("X-RateLimit-Reset", String.valueOf(reset))
+                        .withBody("file!")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/docs");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        long start = System.currentTimeMillis();
+        Map<String, Resource> resources = fetcher.fetchDirectory();
+
+        assertThat(resources).hasSize(30);
+        assertThat(System.currentTimeMillis() - start).isLessThan(5_000);
+    }
+
+    @Test
+    public void shouldTimeOutFetchWaitingForRateLimitReset() throws Exception {
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+        long reset = System.currentTimeMillis() / 1000 + 3600;
+
+        stubFor(get(urlMatching("/repos/owner/myrepo/contents/docs/.*\\?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("X-RateLimit-Limit", "5000")
+                        .withHeader("X-RateLimit-Remaining", "0")
+                        .withHeader("X-RateLimit-Reset", String.valueOf(reset))
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/docs/first.md");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+
+        // The budget is exhausted until the reset, in an hour
+        config.setFilepath("/docs/second.md");
+        ReflectionTestUtils.setField(fetcher, "httpClientFetchTimeout", 500L);
+        long start = System.currentTimeMillis();
+        try {
+            fetcher.fetch();
+            fail("The budget is exhausted");
+        } catch (FetcherException fe) {
+            assertThat(fe.getMessage()).contains("500 ms");
+        }
+        assertThat(System.currentTimeMillis() - start).isLessThan(5_000);
+        verify(1, getRequestedFor(urlMatching("/repos/owner/myrepo/contents/docs/.*")));
+    }
+
+    @Test
+    public void shouldCoalesceConcurrentFetches() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(500)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 2_000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Resource>> resources = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                resources.add(executor.submit(() -> fetcher.fetch()));
+            }
+            for (Future<Resource> resource : resources) {
+                InputStream fetch = resource.get().getContent();
+                int n = fetch.available();
+                byte[] bytes = new byte[n];
+                fetch.read(bytes, 0, n);
+                assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+    }
+
+    @Test
+    public void shouldFetchAsynchronouslyFromEventLoop() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        CompletableFuture<Resource> result = new CompletableFuture<>();
+        vertx.runOnContext(v -> fetcher.fetchAsync().whenComplete((resource, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(resource);
+            }
+        }));
+
+        InputStream fetch = result.get(5, TimeUnit.SECONDS).getContent();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldServeContentOfUnchangedCommitWithoutFetchingIt() throws Exception {
+        String sha = "3d21ec53a331a6f037a91c368710b99387d012c1";
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/commits/master"))
+                .withHeader("Accept", equalTo("application/vnd.github.v3.sha"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(sha)));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=" + sha))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("master");
+        config.setResolveRef(true);
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "refFreshness", 0L);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/commits/master")));
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=" + sha)));
+
+        // A full commit SHA is never resolved
+        config.setBranchOrTag(sha);
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/commits/master")));
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=" + sha)));
+    }
+
+    @Test
+    public void shouldCheckRepositoryHeadOnceForAllFiles() throws Exception {
+        String sha = "8f1e7c5a0b3d2e4f6a7b8c9d0e1f2a3b4c5d6e7f";
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/commits/develop"))
+                .withHeader("Accept", equalTo("application/vnd.github.v3.sha"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(sha)));
+        stubFor(get(urlMatching("/repos/owner/myrepo/contents/docs/.*\\?ref=" + sha))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+
+        List<String> filepaths = Arrays.asList("/docs/a.md", "/docs/b.md", "/docs/c.md");
+        for (int round = 0; round < 2; round++) {
+            for (String filepath : filepaths) {
+                GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+                config.setOwner("owner");
+                config.setRepository("myrepo");
+                config.setFilepath(filepath);
+                config.setGithubUrl("http://localhost:" + wireMockRule.port());
+                config.setBranchOrTag("develop");
+                config.setResolveRef(true);
+                ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+                ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+                assertThat(fetcher.fetch().getContent()).isNotNull();
+            }
+        }
+
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/commits/develop")));
+        verify(3, getRequestedFor(urlMatching("/repos/owner/myrepo/contents/docs/.*")));
+    }
+
+    @Test
+    public void shouldFetchAgainWhenPushed() throws Exception {
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/pushed?ref=master"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"pushed\"")
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/pushed");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("master");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "webhookEnabled", true);
+        ReflectionTestUtils.setField(fetcher, "webhookHost", "localhost");
+        ReflectionTestUtils.setField(fetcher, "webhookPort", 0);
+        ReflectionTestUtils.setField(fetcher, "webhookSecret", "s3cr3t");
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        int port = WebhookReceiver.getOrStart(vertx, mapper, "localhost", 0, "/github/webhook", "s3cr3t")
+                .listening().get(5, TimeUnit.SECONDS);
+
+        byte[] payload = ("{\"ref\": \"refs/heads/master\", \"repository\": {\"full_name\": \"owner/myrepo\"}, " +
+                "\"commits\": [{\"added\": [], \"modified\": [\"path/to/pushed\"], \"removed\": []}]}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(postWebhook(port, payload, "sha256=0000")).isEqualTo(401);
+        assertThat(postWebhook(port, payload, sign(payload))).isEqualTo(204);
+
+        for (int i = 0; i < 50 && findAll(getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/pushed?ref=master"))).size() < 2; i++) {
+            Thread.sleep(100);
+        }
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/pushed?ref=master")));
+        // The content has been evicted, the new one is fetched without validators
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/pushed?ref=master"))
+                .withHeader("If-None-Match", absent()));
+    }
+
+    @Test
+    public void shouldEvictContentRemovedByTheLastPushedCommit() throws Exception {
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/gone?ref=master"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"gone\"")
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/gone");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("master");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "webhookEnabled", true);
+        ReflectionTestUtils.setField(fetcher, "webhookHost", "localhost");
+        ReflectionTestUtils.setField(fetcher, "webhookPort", 0);
+        ReflectionTestUtils.setField(fetcher, "webhookSecret", "s3cr3t");
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        int port = WebhookReceiver.getOrStart(vertx, mapper, "localhost", 0, "/github/webhook", "s3cr3t")
+                .listening().get(5, TimeUnit.SECONDS);
+
+        // Modified, then removed by a later commit of the same push
+        byte[] payload = ("{\"ref\": \"refs/heads/master\", \"repository\": {\"full_name\": \"owner/myrepo\"}, " +
+                "\"commits\": [{\"added\": [], \"modified\": [\"path/to/gone\"], \"removed\": []}, " +
+                "{\"added\": [], \"modified\": [], \"removed\": [\"path/to/gone\"]}]}")
+                .getBytes(StandardCharsets.UTF_8);
+        assertThat(postWebhook(port, payload, sign(payload))).isEqualTo(204);
+
+        // Removed files are evicted, not fetched again
+        Thread.sleep(500);
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/gone?ref=master")));
+        fetcher.fetch();
+        verify(0, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/gone?ref=master"))
+                .withHeader("If-None-Match", matching(".*")));
+    }
+
+    @Test
+    public void shouldNotRetainDiscardedWebhookListeners() throws Exception {
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/discarded");
+        WebhookReceiver.Listener listener = new WebhookReceiver.Listener() {
+            @Override
+            public void pushed() {
+            }
+
+            @Override
+            public void modified() {
+            }
+
+            @Override
+            public void removed() {
+            }
+        };
+        WebhookReceiver.getOrStart(vertx, mapper, "localhost", 0, "/github/webhook", "s3cr3t").register(config, listener);
+        WeakReference<WebhookReceiver.Listener> reference = new WeakReference<>(listener);
+
+        listener = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertThat(reference.get()).isNull();
+    }
+
+    private static String sign(byte[] payload) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec("s3cr3t".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        StringBuilder signature = new StringBuilder("sha256=");
+        for (byte b : mac.doFinal(payload)) {
+            signature.append(String.format("%02x", b));
+        }
+        return signature.toString();
+    }
+
+    private int postWebhook(int port, byte[] payload, String signature) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/github/webhook").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("X-GitHub-Event", "push");
+        connection.setRequestProperty("X-Hub-Signature-256", signature);
+        connection.getOutputStream().write(payload);
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void shouldCacheLargeContentBlob() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("Gravitee.io is cached! ");
+        }
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/cached?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"sha\": \"4e57d4b8a1a3f1b2c3d4e5f60718293a4b5c6d7e\", \"encoding\": \"none\", \"content\": \"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/git/blobs/4e57d4b8a1a3f1b2c3d4e5f60718293a4b5c6d7e"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(content.toString())));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/cached");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        for (int i = 0; i < 2; i++) {
+            try (InputStream fetch = fetcher.fetch().getContent()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] bytes = new byte[4096];
+                int n;
+                while ((n = fetch.read(bytes)) != -1) {
+                    out.write(bytes, 0, n);
+                }
+                assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(content.toString());
+            }
+        }
+
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/cached?ref=sha1")));
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/git/blobs/4e57d4b8a1a3f1b2c3d4e5f60718293a4b5c6d7e")));
+    }
+
+    @Test
+    public void shouldStoreLargeContentBlobAboveSpoolThreshold() throws Exception {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append("Gravitee.io is stored! ");
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(("blob " + content.length() + '\0').getBytes(StandardCharsets.US_ASCII));
+        StringBuilder sha = new StringBuilder();
+        for (byte b : digest.digest(content.toString().getBytes(StandardCharsets.UTF_8))) {
+            sha.append(String.format("%02x", b));
+        }
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/large?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"sha\": \"" + sha + "\", \"encoding\": \"none\", \"content\": \"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/git/blobs/" + sha))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(content.toString())));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/large");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "httpClientSpoolThreshold", 1_024L);
+        ReflectionTestUtils.setField(fetcher, "contentStorePath", temporaryFolder.getRoot().getAbsolutePath());
+
+        for (int i = 0; i < 2; i++) {
+            try (InputStream fetch = fetcher.fetch().getContent()) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] bytes = new byte[4096];
+                int n;
+                while ((n = fetch.read(bytes)) != -1) {
+                    out.write(bytes, 0, n);
+                }
+                assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(content.toString());
+            }
+        }
+
+        assertThat(temporaryFolder.getRoot().toPath().resolve("blobs").resolve(sha.substring(0, 2)).resolve(sha.toString())).exists();
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/git/blobs/" + sha)));
+    }
+
+    @Test
+    public void shouldServeStoredContentWhenNotModifiedAfterRestart() throws Exception {
+        String content = "Gravitee.io is stored!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(("blob " + content.length() + '\0').getBytes(StandardCharsets.US_ASCII));
+        StringBuilder sha = new StringBuilder();
+        for (byte b : digest.digest(content.getBytes(StandardCharsets.UTF_8))) {
+            sha.append(String.format("%02x", b));
+        }
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/stored?ref=sha1"))
+                .atPriority(2)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"stored\"")
+                        .withBody("{\"sha\": \"" + sha + "\", \"encoding\": \"base64\", \"content\": \"" + encoded + "\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/stored?ref=sha1"))
+                .atPriority(1)
+                // The server compresses the response and suffixes its ETag
+                .withHeader("If-None-Match", equalTo("\"stored--gzip\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/stored");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "contentStorePath", temporaryFolder.getRoot().getAbsolutePath());
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(temporaryFolder.getRoot().toPath().resolve("blobs").resolve(sha.substring(0, 2)).resolve(sha.toString())).exists();
+
+        // A restarted node only has its content store left
+        ConditionalCache.getInstance().clear();
+        Resource resource = fetcher.fetch();
+
+        assertThat(resource.getMetadata()).containsEntry("sha", sha.toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = resource.getContent().read(chunk)) > 0) {
+            bytes.write(chunk, 0, n);
+        }
+        assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(content);
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/stored?ref=sha1"))
+                .withHeader("If-None-Match", equalTo("\"stored--gzip\"")));
+    }
+
+    @Test
+    public void shouldServeStoredContentOfResolvedCommitAfterRestart() throws Exception {
+        String commit = "0a9b8c7d6e5f4a3b2c1d0e9f8a7b6c5d4e3f2a1b";
+        String content = "Gravitee.io is stored at a commit!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(("blob " + content.length() + '\0').getBytes(StandardCharsets.US_ASCII));
+        StringBuilder sha = new StringBuilder();
+        for (byte b : digest.digest(content.getBytes(StandardCharsets.UTF_8))) {
+            sha.append(String.format("%02x", b));
+        }
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/commits/stored-branch"))
+                .withHeader("Accept", equalTo("application/vnd.github.v3.sha"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody(commit)));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/stored?ref=" + commit))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"stored-at-commit\"")
+                        .withBody("{\"sha\": \"" + sha + "\", \"encoding\": \"base64\", \"content\": \"" + encoded + "\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/stored");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("stored-branch");
+        config.setResolveRef(true);
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "refFreshness", 0L);
+        ReflectionTestUtils.setField(fetcher, "contentStorePath", temporaryFolder.getRoot().getAbsolutePath());
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(temporaryFolder.getRoot().toPath().resolve("blobs").resolve(sha.substring(0, 2)).resolve(sha.toString())).exists();
+        assertThat(temporaryFolder.getRoot().toPath().resolve("index").toFile().list()).hasSize(1);
+
+        // A restarted node only has its content store left
+        ConditionalCache.getInstance().clear();
+        ReflectionTestUtils.setField(fetcher, "commitContentCache", new CommitContentCache(1_024));
+        Resource resource = fetcher.fetch();
+
+        assertThat(resource.getMetadata()).containsEntry("sha", sha.toString());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = resource.getContent().read(chunk)) > 0) {
+            bytes.write(chunk, 0, n);
+        }
+        assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(content);
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/commits/stored-branch")));
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/stored?ref=" + commit)));
+    }
+
+    @Test
+    public void shouldFetchClearTextContentWithHttp2Enabled() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "httpClientHttp2Enabled", true);
+
+        InputStream fetch = fetcher.fetch().getContent();
+
+        assertThat(fetch).isNotNull();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldFetchContentWithHttp2OverTls() throws Exception {
+        AtomicReference<HttpVersion> version = new AtomicReference<>();
+        HttpServer server = startTlsServer(true, version);
+        try {
+            ReflectionTestUtils.setField(fetcher, "httpClientHttp2Enabled", true);
+
+            assertThat(fetchFromTlsServer(server)).isEqualTo("Gravitee.io is awesome!");
+            assertThat(version.get()).isEqualTo(HttpVersion.HTTP_2);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void shouldFallBackToHttp11WhenServerDoesNotNegotiateHttp2() throws Exception {
+        AtomicReference<HttpVersion> version = new AtomicReference<>();
+        HttpServer server = startTlsServer(false, version);
+        try {
+            ReflectionTestUtils.setField(fetcher, "httpClientHttp2Enabled", true);
+
+            assertThat(fetchFromTlsServer(server)).isEqualTo("Gravitee.io is awesome!");
+            assertThat(version.get()).isEqualTo(HttpVersion.HTTP_1_1);
+        } finally {
+            server.close();
+        }
+    }
+
+    private HttpServer startTlsServer(boolean alpn, AtomicReference<HttpVersion> version) throws Exception {
+        String encoded = Base64.getEncoder().encodeToString("Gravitee.io is awesome!".getBytes());
+
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer(new HttpServerOptions()
+                .setSsl(true)
+                .setUseAlpn(alpn)
+                .setPemKeyCertOptions(new PemKeyCertOptions()
+                        .setKeyPath(getClass().getResource("/localhost-key.pem").getPath())
+                        .setCertPath(getClass().getResource("/localhost-cert.pem").getPath())))
+                .requestHandler(request -> {
+                    version.set(request.version());
+                    request.response().end("{\"content\": \"" + encoded + "\"}");
+                })
+                .listen(0, "localhost", result -> listening.complete(result.result()));
+        return listening.get(5, TimeUnit.SECONDS);
+    }
+
+    private String fetchFromTlsServer(HttpServer server) throws Exception {
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("https://localhost:" + server.actualPort());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "sslTruststoreType", "pem");
+        ReflectionTestUtils.setField(fetcher, "sslTruststorePath", getClass().getResource("/localhost-cert.pem").getPath());
+
+        InputStream fetch = fetcher.fetch().getContent();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void shouldFetchCompressedContent() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(("{\"content\": \""+encoded+"\"}").getBytes(StandardCharsets.UTF_8));
+        }
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .withHeader("Accept-Encoding", containing("gzip"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Encoding", "gzip")
+                        .withBody(compressed.toByteArray())));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        InputStream fetch = fetcher.fetch().getContent();
+
+        assertThat(fetch).isNotNull();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+    }
+
+    @Test
+    public void shouldRetryTransientFailures() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .inScenario("transient failures")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("unavailable")
+                .willReturn(aResponse()
+                        .withStatus(502)));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .inScenario("transient failures")
+                .whenScenarioStateIs("unavailable")
+                .willSetStateTo("available")
+                .willReturn(aResponse()
+                        .withStatus(403)
+                        .withHeader("Retry-After", "0")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .inScenario("transient failures")
+                .whenScenarioStateIs("available")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        InputStream fetch = fetcher.fetch().getContent();
+
+        assertThat(fetch).isNotNull();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+        verify(3, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+    }
+
+    @Test
+    public void shouldServeCachedContentWhileCircuitIsOpen() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .inScenario("outage")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willSetStateTo("down")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"abc\"")
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .inScenario("outage")
+                .whenScenarioStateIs("down")
+                .willReturn(aResponse()
+                        .withStatus(503)));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "httpClientRetryMaxRetries", 0);
+        ReflectionTestUtils.setField(fetcher, "circuitBreakerWindowSize", 2);
+        ReflectionTestUtils.setField(fetcher, "circuitBreakerMinimumCalls", 2);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        try {
+            fetcher.fetch();
+            fail("GitHub is down");
+        } catch (FetcherException fe) {
+            assertThat(fe.getMessage()).contains("503");
+        }
+
+        // Half of the calls failed, the circuit is open
+        InputStream fetch = fetcher.fetch().getContent();
+
+        assertThat(fetch).isNotNull();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+    }
+
+    @Test
+    public void shouldOnlyCloseCircuitBreakerWithItsProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("probe", 2, 2, 50, 10_000, 100, 100);
+        long first = breaker.tryAcquire();
+        long second = breaker.tryAcquire();
+        long stale = breaker.tryAcquire();
+        breaker.onFailure(first, 1);
+        breaker.onFailure(second, 1);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        Thread.sleep(150);
+        long lost = breaker.tryAcquire();
+        assertThat(lost).isNotEqualTo(CircuitBreaker.NO_PERMIT);
+        assertThat(breaker.tryAcquire()).isEqualTo(CircuitBreaker.NO_PERMIT);
+        // A call admitted before the breaker opened does not close it
+        breaker.onSuccess(stale, 1);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        Thread.sleep(150);
+        long probe = breaker.tryAcquire();
+        assertThat(probe).isNotEqualTo(CircuitBreaker.NO_PERMIT);
+        // Nor does the lost probe answering late
+        breaker.onSuccess(lost, 1);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        breaker.onSuccess(probe, 1);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldRecordMetrics() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .atPriority(2)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"abc\"")
+                        .withHeader("X-RateLimit-Remaining", "4999")
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .atPriority(1)
+                // The server compresses the response and suffixes its ETag
+                .withHeader("If-None-Match", equalTo("\"abc--gzip\""))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("X-RateLimit-Remaining", "4998")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        config.setUsername("user");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        SimpleFetcherMetrics metrics = new SimpleFetcherMetrics();
+        MetricsRegistry.set(metrics);
+        try {
+            assertThat(fetcher.fetch().getContent()).isNotNull();
+            assertThat(fetcher.fetch().getContent()).isNotNull();
+        } finally {
+            MetricsRegistry.set(null);
+        }
+
+        FetcherMetrics.Tags tags = new FetcherMetrics.Tags("localhost", "owner/myrepo", "user");
+        assertThat(metrics.getStatusCount(tags, 200)).isEqualTo(1);
+        assertThat(metrics.getStatusCount(tags, 304)).isEqualTo(1);
+        assertThat(metrics.getCacheCount(tags, FetcherMetrics.CacheResult.MISS)).isEqualTo(1);
+        assertThat(metrics.getCacheCount(tags, FetcherMetrics.CacheResult.REVALIDATED)).isEqualTo(1);
+        // The response is compressed by the server, the body is measured once inflated
+        assertThat(metrics.getDecodedBytes(tags)).isEqualTo(("{\"content\": \""+encoded+"\"}").length());
+        assertThat(metrics.getPhase(tags, FetcherMetrics.Phase.QUEUEING).getCount()).isEqualTo(2);
+        assertThat(metrics.getPhase(tags, FetcherMetrics.Phase.TIME_TO_FIRST_BYTE).getCount()).isEqualTo(2);
+        assertThat(metrics.getPhase(tags, FetcherMetrics.Phase.BODY).getCount()).isEqualTo(2);
+        assertThat(metrics.getPhase(tags, FetcherMetrics.Phase.DECODE).getCount()).isEqualTo(2);
+        assertThat(metrics.getRateLimitRemaining("localhost", "user")).isEqualTo(4998);
+    }
+
+    @Test
+    public void shouldGoStraightToPermanentlyMovedRepository() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(301)
+                        .withHeader("Location", "http://localhost:" + wireMockRule.port() + "/repositories/42/contents/path/to/file?ref=sha1")));
+        stubFor(get(urlEqualTo("/repositories/42/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/temprepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(302)
+                        .withHeader("Location", "http://localhost:" + wireMockRule.port() + "/repositories/42/contents/path/to/file?ref=sha1")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+        verify(2, getRequestedFor(urlEqualTo("/repositories/42/contents/path/to/file?ref=sha1")));
+
+        // Temporary redirects are followed each time
+        config.setRepository("temprepo");
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/temprepo/contents/path/to/file?ref=sha1")));
+
+        // The redirect is forgotten once its location is gone
+        config.setRepository("myrepo");
+        stubFor(get(urlEqualTo("/repositories/42/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(404)));
+        try {
+            fetcher.fetch();
+            fail("Fetching a missing file does not throw Exception");
+        } catch (FetcherException fe) {
+            // Expected
+        }
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+    }
+
+    @Test
+    public void shouldWarmUpConnectionsWithoutDelayingFirstFetch() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/rate_limit"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withFixedDelay(1_500)
+                        .withBody("{\"resources\": {}}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 5_000);
+        ReflectionTestUtils.setField(fetcher, "warmupEnabled", true);
+        ReflectionTestUtils.setField(fetcher, "warmupConnections", 3);
+
+        long start = System.currentTimeMillis();
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(System.currentTimeMillis() - start).isLessThan(1_500);
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+
+        // Connections are only warmed up once, in the background
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (findAll(getRequestedFor(urlEqualTo("/rate_limit"))).size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        verify(3, getRequestedFor(urlEqualTo("/rate_limit")));
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+    }
+
+    @Test
+    public void shouldTrustConfiguredTrustStore() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        vertx.createHttpServer(new HttpServerOptions()
+                .setSsl(true)
+                .setPemKeyCertOptions(new PemKeyCertOptions()
+                        .setKeyPath(getClass().getResource("/localhost-key.pem").getPath())
+                        .setCertPath(getClass().getResource("/localhost-cert.pem").getPath())))
+                .requestHandler(request -> request.response().end("{\"content\": \"" + encoded + "\"}"))
+                .listen(0, "localhost", result -> listening.complete(result.result()));
+        HttpServer server = listening.get(5, TimeUnit.SECONDS);
+
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("https://localhost:" + server.actualPort());
+        config.setBranchOrTag("sha1");
+
+        // The self-signed certificate is not trusted by the JVM
+        Vertx untrustingVertx = Vertx.vertx();
+        GitHubFetcher untrustingFetcher = new GitHubFetcher(config);
+        ReflectionTestUtils.setField(untrustingFetcher, "vertx", untrustingVertx);
+        ReflectionTestUtils.setField(untrustingFetcher, "mapper", mapper);
+        ReflectionTestUtils.setField(untrustingFetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(untrustingFetcher, "httpClientRetryMaxRetries", 0);
+        try {
+            untrustingFetcher.fetch();
+            fail("Fetching from an untrusted server does not throw Exception");
+        } catch (FetcherException fe) {
+            // Expected
+        } finally {
+            untrustingVertx.close();
+        }
+
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "sslTruststoreType", "pem");
+        ReflectionTestUtils.setField(fetcher, "sslTruststorePath", getClass().getResource("/localhost-cert.pem").getPath());
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+    }
+
+    @Test
+    public void shouldSendBackETagOfCompressedContent() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/compressed?ref=sha1"))
+                .atPriority(2)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"abc\"")
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/compressed?ref=sha1"))
+                .atPriority(1)
+                .withHeader("Accept-Encoding", containing("gzip"))
+                .withHeader("If-None-Match", equalTo("\"abc--gzip\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/compressed");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        InputStream fetch = fetcher.fetch().getContent();
+
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+        // The server compresses the response and suffixes its ETag, which is sent back as is
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/compressed?ref=sha1"))
+                .withHeader("If-None-Match", equalTo("\"abc--gzip\"")));
+    }
+
+    @Test
+    public void shouldReusePooledClientBetweenFetches() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        HttpClient client = HttpClientRegistry.get(vertx).getOrCreate("localhost", wireMockRule.port(), false, null,
+                key -> { throw new IllegalStateException("Client should have been created by the first fetch"); });
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        assertThat(HttpClientRegistry.get(vertx).getOrCreate("localhost", wireMockRule.port(), false, null,
+                key -> null)).isSameAs(client);
+        verify(2, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1")));
+    }
+
+    @Test
+    public void shouldServeCachedContentWhenNotModified() throws Exception {
+        String content = "Gravitee.io is awesome!";
+        String encoded = Base64.getEncoder().encodeToString(content.getBytes());
+
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .atPriority(2)
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("ETag", "\"abc\"")
+                        .withBody("{\"content\": \""+encoded+"\"}")));
+        stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .atPriority(1)
+                .withHeader("If-None-Match", equalTo("\"abc\""))
+                .willReturn(aResponse()
+                        .withStatus(304)));
+        GitHubFetcherConfiguration config = new GitHubFetcherConfiguration();
+        config.setOwner("owner");
+        config.setRepository("myrepo");
+        config.setFilepath("/path/to/file");
+        config.setGithubUrl("http://localhost:" + wireMockRule.port());
+        config.setBranchOrTag("sha1");
+        ReflectionTestUtils.setField(fetcher, "gitHubFetcherConfiguration", config);
+        ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 1_000);
+        ReflectionTestUtils.setField(fetcher, "httpClientCompression", false);
+
+        assertThat(fetcher.fetch().getContent()).isNotNull();
+        InputStream fetch = fetcher.fetch().getContent();
+
+        assertThat(fetch).isNotNull();
+        int n = fetch.available();
+        byte[] bytes = new byte[n];
+        fetch.read(bytes, 0, n);
+        assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo(content);
+        verify(1, getRequestedFor(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
+                .withHeader("If-None-Match", equalTo("\"abc\"")));
+    }
+
     @Test(expected = FetcherException.class)
     public void shouldThrowExceptionWhenStatusNot200() throws Exception {
         stubFor(get(urlEqualTo("/repos/owner/myrepo/contents/path/to/file?ref=sha1"))
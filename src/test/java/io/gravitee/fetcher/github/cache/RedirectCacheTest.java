@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.cache;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RedirectCacheTest {
+
+    private final RedirectCache redirectCache = new RedirectCache();
+
+    @Test
+    public void shouldRedirectEveryResourceOfRedirectedPrefix() {
+        redirectCache.put("https://api.github.com/repos/owner/old/contents/README.md",
+                "https://api.github.com/repositories/42/contents/README.md", 60_000);
+
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/old/contents/docs/api.md?ref=master"))
+                .isEqualTo("https://api.github.com/repositories/42/contents/docs/api.md?ref=master");
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/old/git/trees/master?recursive=1"))
+                .isEqualTo("https://api.github.com/repositories/42/git/trees/master?recursive=1");
+        // Other repositories, and the same path on another host, are left alone
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/other/contents/README.md"))
+                .isEqualTo("https://api.github.com/repos/owner/other/contents/README.md");
+        assertThat(redirectCache.resolve("https://github.example.com/repos/owner/old/contents/README.md"))
+                .isEqualTo("https://github.example.com/repos/owner/old/contents/README.md");
+    }
+
+    @Test
+    public void shouldFollowSuccessiveRedirects() {
+        redirectCache.put("https://api.github.com/repos/owner/old/contents/README.md",
+                "https://api.github.com/repos/owner/renamed/contents/README.md", 60_000);
+        redirectCache.put("https://api.github.com/repos/owner/renamed/contents/README.md",
+                "https://api.github.com/repos/other-owner/renamed/contents/README.md", 60_000);
+
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/old/contents/README.md"))
+                .isEqualTo("https://api.github.com/repos/other-owner/renamed/contents/README.md");
+    }
+
+    @Test
+    public void shouldNotKeepRedirectChangingQuery() {
+        redirectCache.put("https://api.github.com/repos/owner/old/contents/README.md?ref=master",
+                "https://api.github.com/repos/owner/old/contents/README.md?ref=main", 60_000);
+
+        assertThat(redirectCache.size()).isZero();
+    }
+
+    @Test
+    public void shouldForgetRedirectsOfInvalidatedUrl() {
+        redirectCache.put("https://api.github.com/repos/owner/old/contents/README.md",
+                "https://api.github.com/repos/owner/renamed/contents/README.md", 60_000);
+        redirectCache.put("https://api.github.com/repos/owner/renamed/contents/README.md",
+                "https://api.github.com/repositories/42/contents/README.md", 60_000);
+
+        redirectCache.remove("https://api.github.com/repos/owner/old/contents/docs/api.md");
+
+        assertThat(redirectCache.size()).isZero();
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/old/contents/README.md"))
+                .isEqualTo("https://api.github.com/repos/owner/old/contents/README.md");
+    }
+
+    @Test
+    public void shouldForgetExpiredRedirects() throws InterruptedException {
+        redirectCache.put("https://api.github.com/repos/owner/old/contents/README.md",
+                "https://api.github.com/repositories/42/contents/README.md", 10);
+        Thread.sleep(50);
+
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/old/contents/README.md"))
+                .isEqualTo("https://api.github.com/repos/owner/old/contents/README.md");
+        assertThat(redirectCache.size()).isZero();
+    }
+
+    @Test
+    public void shouldNotKeepRedirectOnlyAddingTrailingSlash() {
+        redirectCache.put("https://api.github.com/repos/owner/repo", "https://api.github.com/repos/owner/repo/", 60_000);
+
+        assertThat(redirectCache.size()).isZero();
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/repo"))
+                .isEqualTo("https://api.github.com/repos/owner/repo");
+        assertThat(redirectCache.resolve("https://api.github.com/repos/owner/other/contents/README.md"))
+                .isEqualTo("https://api.github.com/repos/owner/other/contents/README.md");
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class PathFilterTest {
+
+    @Test
+    public void shouldAcceptEveryFileWithoutGlob() {
+        PathFilter filter = new PathFilter(null, null, null);
+
+        assertThat(filter.accept("README.md")).isTrue();
+        assertThat(filter.accept("docs/api/index.md")).isTrue();
+    }
+
+    @Test
+    public void shouldOnlyAcceptFilesUnderDirectory() {
+        PathFilter filter = new PathFilter("/docs/", null, null);
+
+        assertThat(filter.accept("docs/README.md")).isTrue();
+        assertThat(filter.accept("docs/api/index.md")).isTrue();
+        assertThat(filter.accept("README.md")).isFalse();
+        assertThat(filter.accept("docs-old/README.md")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchGlobsRelativeToDirectory() {
+        PathFilter filter = new PathFilter("docs", Collections.singletonList("*.md"), null);
+
+        assertThat(filter.accept("docs/README.md")).isTrue();
+        assertThat(filter.accept("docs/api/index.md")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchAcrossDirectoriesWithDoubleStar() {
+        PathFilter filter = new PathFilter(null, Collections.singletonList("**.md"), null);
+
+        assertThat(filter.accept("README.md")).isTrue();
+        assertThat(filter.accept("docs/api/index.md")).isTrue();
+        assertThat(filter.accept("docs/api/index.yml")).isFalse();
+    }
+
+    @Test
+    public void shouldMatchSingleCharacterWithQuestionMark() {
+        PathFilter filter = new PathFilter(null, Collections.singletonList("v?.yml"), null);
+
+        assertThat(filter.accept("v1.yml")).isTrue();
+        assertThat(filter.accept("v10.yml")).isFalse();
+        assertThat(filter.accept("v/.yml")).isFalse();
+    }
+
+    @Test
+    public void shouldLetExcludesOverrideIncludes() {
+        PathFilter filter = new PathFilter(null, Arrays.asList("**.md", "*.yml"), Collections.singletonList("drafts/**"));
+
+        assertThat(filter.accept("README.md")).isTrue();
+        assertThat(filter.accept("swagger.yml")).isTrue();
+        assertThat(filter.accept("drafts/README.md")).isFalse();
+        assertThat(filter.accept("drafts/old/swagger.md")).isFalse();
+    }
+}
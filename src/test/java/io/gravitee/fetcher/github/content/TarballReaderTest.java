@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.content;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class TarballReaderTest {
+
+    private static final PathFilter ALL = new PathFilter(null, Collections.emptyList(), Collections.emptyList());
+
+    @Test
+    public void shouldReadRegularFilesWithoutTopLevelDirectory() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        entry(tar, "owner-repo-sha1/", '5', "");
+        entry(tar, "owner-repo-sha1/README.md", '0', "Gravitee.io");
+        entry(tar, "owner-repo-sha1/docs/api.md", '0', "is awesome!");
+
+        assertThat(read(tar, ALL))
+                .containsOnlyKeys("README.md", "docs/api.md")
+                .containsEntry("README.md", "Gravitee.io")
+                .containsEntry("docs/api.md", "is awesome!");
+    }
+
+    @Test
+    public void shouldReadGnuLongName() throws IOException {
+        String path = "docs/" + repeat("a-very-long-directory-name/", 5) + "file.md";
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        entry(tar, "././@LongLink", 'L', "owner-repo-sha1/" + path + '\0');
+        entry(tar, ("owner-repo-sha1/" + path).substring(0, 100), '0', "Gravitee.io");
+        entry(tar, "owner-repo-sha1/README.md", '0', "is awesome!");
+
+        assertThat(read(tar, ALL))
+                .containsOnlyKeys(path, "README.md")
+                .containsEntry(path, "Gravitee.io");
+    }
+
+    @Test
+    public void shouldReadPaxPath() throws IOException {
+        String path = "docs/" + repeat("a-very-long-directory-name/", 5) + "file.md";
+        String record = " path=owner-repo-sha1/" + path + '\n';
+        // The length of a record includes its own digits
+        int length = record.length() + String.valueOf(record.length()).length();
+        length = record.length() + String.valueOf(length).length();
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        entry(tar, "owner-repo-sha1/PaxHeaders/file.md", 'x', length + record);
+        entry(tar, ("owner-repo-sha1/" + path).substring(0, 100), '0', "Gravitee.io");
+
+        assertThat(read(tar, ALL))
+                .containsOnlyKeys(path)
+                .containsEntry(path, "Gravitee.io");
+    }
+
+    @Test
+    public void shouldSkipEntriesEscapingRepositoryRoot() throws IOException {
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        entry(tar, "owner-repo-sha1/../../etc/passwd", '0', "root");
+        entry(tar, "owner-repo-sha1/docs/../../secret", '0', "secret");
+        entry(tar, "owner-repo-sha1//etc/hosts", '0', "localhost");
+        entry(tar, "owner-repo-sha1/docs/..md", '0', "Gravitee.io");
+
+        assertThat(read(tar, new PathFilter("docs", Collections.emptyList(), Collections.emptyList())))
+                .containsOnlyKeys("docs/..md");
+    }
+
+    private static Map<String, String> read(ByteArrayOutputStream tar, PathFilter filter) throws IOException {
+        tar.write(new byte[1024]);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(tar.toByteArray());
+        }
+
+        Map<String, String> files = new LinkedHashMap<>();
+        new TarballReader(new ByteArrayInputStream(gzipped.toByteArray())).read(filter, (path, size, content) -> {
+            byte[] bytes = readAll(content);
+            assertThat(bytes).hasSize((int) size);
+            files.put(path, new String(bytes, StandardCharsets.UTF_8));
+        });
+        return files;
+    }
+
+    private static void entry(ByteArrayOutputStream tar, String name, char type, String data) throws IOException {
+        byte[] content = data.getBytes(StandardCharsets.UTF_8);
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        byte[] size = String.format("%011o", content.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        byte[] magic = "ustar".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(magic, 0, header, 257, magic.length);
+        tar.write(header);
+        tar.write(content);
+        tar.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static byte[] readAll(InputStream content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = content.read(chunk)) != -1) {
+            out.write(chunk, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(value);
+        }
+        return repeated.toString();
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.http;
+
+import io.gravitee.fetcher.github.http.RateLimitScheduler.Priority;
+import io.vertx.core.MultiMap;
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author GraviteeSource Team
+ */
+public class RateLimitSchedulerTest {
+
+    private static final String KEY = "api.github.com|anonymous";
+
+    private final Vertx vertx = Vertx.vertx();
+    private final RateLimitScheduler scheduler = RateLimitScheduler.get(vertx);
+
+    @After
+    public void tearDown() throws Exception {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        vertx.close(result -> closed.complete(null));
+        closed.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldNotPaceWhileBudgetIsUnknown() {
+        assertThat(done(acquire(50, Priority.LOW))).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldNotPaceWhileBudgetIsComfortable() {
+        update(1000, 500, 3600);
+
+        assertThat(done(acquire(50, Priority.LOW))).isEqualTo(50);
+        assertThat(done(acquire(50, Priority.HIGH))).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldPaceLowPriorityRequestsCloseToReserve() {
+        // Between the reserve (100) and the pacing threshold (200), low priority requests get a burst of 10
+        update(1000, 150, 3600);
+
+        assertThat(done(acquire(20, Priority.LOW))).isEqualTo(10);
+
+        // High priority requests are still sent straight away
+        assertThat(done(acquire(20, Priority.HIGH))).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldDeferLowPriorityRequestsBelowReserve() {
+        update(1000, 50, 3600);
+
+        assertThat(done(acquire(5, Priority.LOW))).isZero();
+        // High priority requests are paced, with a burst of 10
+        assertThat(done(acquire(20, Priority.HIGH))).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldNotSendAnythingOnceBudgetIsExhausted() {
+        update(1000, 0, 3600);
+
+        assertThat(done(acquire(1, Priority.HIGH))).isZero();
+    }
+
+    @Test
+    public void shouldReleaseHighPriorityRequestsFirst() throws Exception {
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap().add("Retry-After", "1");
+        scheduler.update(KEY, 429, headers);
+
+        List<Priority> released = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> permits = new ArrayList<>();
+        for (Priority priority : new Priority[] {Priority.LOW, Priority.HIGH, Priority.LOW, Priority.HIGH}) {
+            permits.add(scheduler.acquire(KEY, priority).thenRun(() -> released.add(priority)));
+        }
+        assertThat(done(permits)).isZero();
+
+        CompletableFuture.allOf(permits.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+        assertThat(released).containsExactly(Priority.HIGH, Priority.HIGH, Priority.LOW, Priority.LOW);
+    }
+
+    private void update(long limit, long remaining, long resetIn) {
+        MultiMap headers = MultiMap.caseInsensitiveMultiMap()
+                .add("X-RateLimit-Limit", String.valueOf(limit))
+                .add("X-RateLimit-Remaining", String.valueOf(remaining))
+                .add("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + resetIn));
+        scheduler.update(KEY, 200, headers);
+    }
+
+    private List<CompletableFuture<Void>> acquire(int count, Priority priority) {
+        List<CompletableFuture<Void>> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            permits.add(scheduler.acquire(KEY, priority));
+        }
+        return permits;
+    }
+
+    private static long done(List<CompletableFuture<Void>> permits) {
+        return permits.stream().filter(CompletableFuture::isDone).count();
+    }
+}
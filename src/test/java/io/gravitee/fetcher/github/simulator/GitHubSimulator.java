@@ -0,0 +1,494 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.simulator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-process GitHub API, to run the fetcher against without network nor rate limit concerns.
+ *
+ * It serves the contents, commits, Git trees and blobs REST endpoints and the GraphQL blobs queries, with the
+ * behaviors of GitHub the fetcher relies on: files larger than 1 MB are not inlined, responses carry ETags and
+ * conditional requests are answered with 304, renamed repositories are redirected, and every credential has a rate
+ * limit budget reported in the {@code X-RateLimit-*} headers (304 responses do not consume it). Responses are delayed
+ * according to a {@link LatencyDistribution}.
+ *
+ * @author GraviteeSource Team
+ */
+public class GitHubSimulator {
+
+    public static final int INLINE_LIMIT = 1024 * 1024;
+
+    private static final Pattern REPOSITORY_PATTERN = Pattern.compile("/repos/([^/]+)/([^/]+)(/.*)");
+    private static final Pattern CONTENTS_PATTERN = Pattern.compile("/contents/(.+)");
+    private static final Pattern COMMITS_PATTERN = Pattern.compile("/commits/([^/]+)");
+    private static final Pattern TREES_PATTERN = Pattern.compile("/git/trees/([^/]+)");
+    private static final Pattern BLOBS_PATTERN = Pattern.compile("/git/blobs/([0-9a-f]{40})");
+
+    private static final String RAW_MEDIA_TYPE = "application/vnd.github.v3.raw";
+    private static final String SHA_MEDIA_TYPE = "application/vnd.github.v3.sha";
+    private static final String ANONYMOUS = "anonymous";
+
+    private final Vertx vertx;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Repository> repositories = new ConcurrentHashMap<>();
+    private final Map<String, String> renamed = new ConcurrentHashMap<>();
+    private final Map<String, Budget> budgets = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile int rateLimit = 5000;
+    private volatile long rateLimitWindow = 3600_000;
+
+    private HttpServer server;
+
+    public GitHubSimulator(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * @return a future completed with the port the simulator listens to
+     */
+    public CompletableFuture<Integer> start(int port) {
+        final CompletableFuture<Integer> started = new CompletableFuture<>();
+        server = vertx.createHttpServer().requestHandler(this::handle).listen(port, "localhost", result -> {
+            if (result.succeeded()) {
+                started.complete(result.result().actualPort());
+            } else {
+                started.completeExceptionally(result.cause());
+            }
+        });
+        return started;
+    }
+
+    public CompletableFuture<Void> stop() {
+        final CompletableFuture<Void> stopped = new CompletableFuture<>();
+        server.close(result -> stopped.complete(null));
+        return stopped;
+    }
+
+    public GitHubSimulator latency(LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param limit the number of requests allowed per credential and window
+     * @param window the duration after which budgets are reset, in milliseconds
+     */
+    public GitHubSimulator rateLimit(int limit, long window) {
+        this.rateLimit = limit;
+        this.rateLimitWindow = window;
+        return this;
+    }
+
+    public Repository repository(String owner, String name) {
+        return repositories.computeIfAbsent(owner + '/' + name, key -> new Repository());
+    }
+
+    /**
+     * Redirect the requests to a repository to another one, permanently.
+     */
+    public GitHubSimulator rename(String owner, String name, String newOwner, String newName) {
+        renamed.put(owner + '/' + name, newOwner + '/' + newName);
+        return this;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getRequests(int status) {
+        final AtomicLong count = statuses.get(status);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the rate limit budget consumed by every credential, since their last reset
+     */
+    public Map<String, Long> getRateLimitConsumption() {
+        final Map<String, Long> consumption = new TreeMap<>();
+        budgets.forEach((credential, budget) -> consumption.put(credential, budget.used()));
+        return consumption;
+    }
+
+    private void handle(HttpServerRequest request) {
+        requests.incrementAndGet();
+        request.bodyHandler(body -> {
+            final long delay = latency.next();
+            if (delay > 0) {
+                vertx.setTimer(delay, id -> respond(request, body));
+            } else {
+                respond(request, body);
+            }
+        });
+    }
+
+    private void respond(HttpServerRequest request, Buffer body) {
+        final Budget budget = budgets.computeIfAbsent(credential(request), credential -> new Budget());
+        final long[] state = budget.state();
+        if (state[0] >= rateLimit) {
+            rateLimitHeaders(request, state);
+            send(request, 403, "{\"message\": \"API rate limit exceeded\"}");
+            return;
+        }
+
+        final Response response;
+        try {
+            response = route(request, body);
+        } catch (Exception ex) {
+            send(request, 500, "{\"message\": \"" + ex.getMessage() + "\"}");
+            return;
+        }
+        final long used = response.status == 304 ? state[0] : budget.consume();
+        rateLimitHeaders(request, new long[]{used, state[1]});
+        if (response.etag != null) {
+            request.response().putHeader("ETag", response.etag);
+        }
+        if (response.location != null) {
+            request.response().putHeader("Location", response.location);
+        }
+        send(request, response.status, response.body);
+    }
+
+    private Response route(HttpServerRequest request, Buffer body) throws IOException {
+        final String path = request.path();
+        if ("/graphql".equals(path)) {
+            return graphql(body);
+        }
+
+        final Matcher repositoryMatcher = REPOSITORY_PATTERN.matcher(path);
+        if (!repositoryMatcher.matches()) {
+            return Response.notFound();
+        }
+        final String name = repositoryMatcher.group(1) + '/' + repositoryMatcher.group(2);
+        final String target = renamed.get(name);
+        if (target != null) {
+            final String query = request.query() == null ? "" : '?' + request.query();
+            return Response.redirect(request.absoluteURI().replaceFirst("/repos/.*",
+                    Matcher.quoteReplacement("/repos/" + target + repositoryMatcher.group(3) + query)));
+        }
+        final Repository repository = repositories.get(name);
+        if (repository == null) {
+            return Response.notFound();
+        }
+
+        final String resource = repositoryMatcher.group(3);
+        final String accept = request.getHeader("Accept") == null ? "" : request.getHeader("Accept");
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        Matcher matcher;
+        if ((matcher = CONTENTS_PATTERN.matcher(resource)).matches()) {
+            return contents(request, repository, matcher.group(1), accept, ifNoneMatch);
+        } else if ((matcher = COMMITS_PATTERN.matcher(resource)).matches()) {
+            final String sha = repository.head();
+            final String etag = '"' + sha + '"';
+            if (etag.equals(ifNoneMatch)) {
+                return Response.notModified(etag);
+            }
+            return Response.ok(etag, accept.contains(SHA_MEDIA_TYPE) ? Buffer.buffer(sha) : json(object().put("sha", sha)));
+        } else if ((matcher = TREES_PATTERN.matcher(resource)).matches()) {
+            final ObjectNode tree = object().put("sha", repository.head()).put("truncated", false);
+            final ArrayNode entries = tree.putArray("tree");
+            repository.files.forEach((filepath, file) ->
+                    entries.addObject().put("path", filepath).put("type", "blob").put("sha", file.sha).put("size", file.content.length));
+            return Response.ok(null, json(tree));
+        } else if ((matcher = BLOBS_PATTERN.matcher(resource)).matches()) {
+            final File file = repository.blob(matcher.group(1));
+            if (file == null) {
+                return Response.notFound();
+            }
+            return Response.ok('"' + file.sha + '"', accept.contains(RAW_MEDIA_TYPE) ? Buffer.buffer(file.content)
+                    : json(object().put("sha", file.sha).put("size", file.content.length).put("encoding", "base64")
+                    .put("content", encode(file.content))));
+        }
+        return Response.notFound();
+    }
+
+    private Response contents(HttpServerRequest request, Repository repository, String filepath, String accept,
+                              String ifNoneMatch) {
+        final File file = repository.files.get(filepath);
+        if (file == null) {
+            return Response.notFound();
+        }
+        final boolean raw = accept.contains(RAW_MEDIA_TYPE);
+        final String etag = '"' + file.sha + (raw ? "-raw" : "") + '"';
+        if (etag.equals(ifNoneMatch)) {
+            return Response.notModified(etag);
+        }
+        if (raw) {
+            return Response.ok(etag, Buffer.buffer(file.content));
+        }
+        final boolean inlined = file.content.length <= INLINE_LIMIT;
+        return Response.ok(etag, json(object()
+                .put("name", filepath.substring(filepath.lastIndexOf('/') + 1))
+                .put("path", filepath)
+                .put("sha", file.sha)
+                .put("size", file.content.length)
+                .put("url", request.absoluteURI())
+                .put("html_url", "https://github.com/" + filepath)
+                .put("type", "file")
+                .put("content", inlined ? encode(file.content) : "")
+                .put("encoding", inlined ? "base64" : "none")));
+    }
+
+    private Response graphql(Buffer body) throws IOException {
+        final JsonNode query = mapper.readTree(body.getBytes());
+        final JsonNode variables = query.path("variables");
+        final Repository repository = repositories.get(variables.path("owner").asText() + '/' + variables.path("name").asText());
+        final ObjectNode response = object();
+        if (repository == null) {
+            response.putNull("data");
+            response.putArray("errors").addObject().put("message", "Could not resolve to a Repository");
+            return Response.ok(null, json(response));
+        }
+        final ObjectNode repositoryNode = response.putObject("data").putObject("repository");
+        variables.fields().forEachRemaining(variable -> {
+            if (variable.getKey().equals("owner") || variable.getKey().equals("name")) {
+                return;
+            }
+            final String expression = variable.getValue().asText();
+            final File file = repository.files.get(expression.substring(expression.indexOf(':') + 1));
+            if (file == null) {
+                repositoryNode.putNull(variable.getKey());
+                return;
+            }
+            final boolean truncated = file.content.length > INLINE_LIMIT;
+            repositoryNode.putObject(variable.getKey())
+                    .put("oid", file.sha)
+                    .put("byteSize", file.content.length)
+                    .put("isBinary", false)
+                    .put("isTruncated", truncated)
+                    .put("text", truncated ? null : new String(file.content, StandardCharsets.UTF_8));
+        });
+        return Response.ok(null, json(response));
+    }
+
+    private void rateLimitHeaders(HttpServerRequest request, long[] state) {
+        request.response()
+                .putHeader("X-RateLimit-Limit", String.valueOf(rateLimit))
+                .putHeader("X-RateLimit-Remaining", String.valueOf(Math.max(0, rateLimit - state[0])))
+                .putHeader("X-RateLimit-Reset", String.valueOf((state[1] + rateLimitWindow) / 1000));
+    }
+
+    private void send(HttpServerRequest request, int status, String body) {
+        send(request, status, Buffer.buffer(body));
+    }
+
+    private void send(HttpServerRequest request, int status, Buffer body) {
+        statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+        request.response().setStatusCode(status);
+        if (body == null) {
+            request.response().end();
+        } else {
+            request.response().end(body);
+        }
+    }
+
+    private static String credential(HttpServerRequest request) {
+        final String authorization = request.getHeader("Authorization");
+        if (authorization == null || !authorization.startsWith("Basic ")) {
+            return ANONYMOUS;
+        }
+        final String decoded = new String(Base64.getDecoder().decode(authorization.substring(6)), StandardCharsets.UTF_8);
+        return decoded.substring(0, Math.max(0, decoded.indexOf(':')));
+    }
+
+    private ObjectNode object() {
+        return mapper.createObjectNode();
+    }
+
+    private Buffer json(JsonNode node) {
+        try {
+            return Buffer.buffer(mapper.writeValueAsBytes(node));
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private static String encode(byte[] content) {
+        // GitHub wraps the base64 content every 60 characters
+        return Base64.getMimeEncoder(60, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(content) + '\n';
+    }
+
+    private static String sha1(byte[] header, byte[] content) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(header);
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(content)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * The files of a repository, at its head commit. Every ref resolves to the head.
+     */
+    public static final class Repository {
+        private final Map<String, File> files = new ConcurrentHashMap<>();
+        private volatile String head = sha1(new byte[0], new byte[0]);
+
+        public Repository file(String path, byte[] content) {
+            files.put(path.startsWith("/") ? path.substring(1) : path, new File(content));
+            final StringBuilder tree = new StringBuilder();
+            new TreeMap<>(files).forEach((filepath, file) -> tree.append(filepath).append(file.sha));
+            head = sha1(new byte[0], tree.toString().getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        /**
+         * Add a text file of the given size.
+         */
+        public Repository file(String path, int size) {
+            final byte[] content = new byte[size];
+            final Random random = new Random(path.hashCode());
+            for (int i = 0; i < size; i++) {
+                content[i] = (byte) ('a' + random.nextInt(26));
+            }
+            return file(path, content);
+        }
+
+        String head() {
+            return head;
+        }
+
+        File blob(String sha) {
+            return files.values().stream().filter(file -> file.sha.equals(sha)).findFirst().orElse(null);
+        }
+    }
+
+    private static final class File {
+        private final byte[] content;
+        private final String sha;
+
+        File(byte[] content) {
+            this.content = content;
+            this.sha = sha1(("blob " + content.length + '\0').getBytes(StandardCharsets.US_ASCII), content);
+        }
+    }
+
+    private final class Budget {
+        private long used;
+        private long windowStart = System.currentTimeMillis();
+
+        /**
+         * @return the used budget and the start of the window
+         */
+        synchronized long[] state() {
+            if (System.currentTimeMillis() - windowStart >= rateLimitWindow) {
+                used = 0;
+                windowStart = System.currentTimeMillis();
+            }
+            return new long[]{used, windowStart};
+        }
+
+        synchronized long consume() {
+            return ++used;
+        }
+
+        synchronized long used() {
+            return used;
+        }
+    }
+
+    private static final class Response {
+        private final int status;
+        private final String etag;
+        private final String location;
+        private final Buffer body;
+
+        private Response(int status, String etag, String location, Buffer body) {
+            this.status = status;
+            this.etag = etag;
+            this.location = location;
+            this.body = body;
+        }
+
+        static Response ok(String etag, Buffer body) {
+            return new Response(200, etag, null, body);
+        }
+
+        static Response notModified(String etag) {
+            return new Response(304, etag, null, null);
+        }
+
+        static Response redirect(String location) {
+            return new Response(301, null, location, Buffer.buffer("{\"message\": \"Moved Permanently\"}"));
+        }
+
+        static Response notFound() {
+            return new Response(404, null, null, Buffer.buffer("{\"message\": \"Not Found\"}"));
+        }
+    }
+
+    /**
+     * The time the simulator waits before responding, in milliseconds.
+     */
+    public interface LatencyDistribution {
+
+        long next();
+
+        static LatencyDistribution none() {
+            return () -> 0;
+        }
+
+        static LatencyDistribution fixed(long latency) {
+            return () -> latency;
+        }
+
+        static LatencyDistribution uniform(long min, long max) {
+            return () -> ThreadLocalRandom.current().nextLong(min, max + 1);
+        }
+
+        /**
+         * A long-tailed distribution, close to what is observed on real networks.
+         *
+         * @param median the median latency
+         * @param p99 the 99th percentile of the latency
+         */
+        static LatencyDistribution logNormal(long median, long p99) {
+            final double mu = Math.log(Math.max(1, median));
+            final double sigma = Math.max(0, (Math.log(Math.max(median, p99)) - mu) / 2.326);
+            return () -> Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.fetcher.github.simulator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.gravitee.fetcher.github.GitHubFetcher;
+import io.gravitee.fetcher.github.GitHubFetcherConfiguration;
+import io.vertx.core.Vertx;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs thousands of fetchers against a {@link GitHubSimulator}, and reports the throughput, the latency percentiles
+ * and the rate limit consumption. Every fetcher fetches its own file, and every round fetches all files once. Between
+ * rounds, a share of the files is modified, the other ones are expected to be revalidated.
+ *
+ * Settings are given as {@code name=value} arguments:
+ * <ul>
+ *     <li>{@code fetchers}: the number of fetchers (2000)</li>
+ *     <li>{@code repositories}: the number of repositories the files are spread over (50)</li>
+ *     <li>{@code credentials}: the number of credentials the fetchers are spread over (10)</li>
+ *     <li>{@code fileSize}: the size of the files, in bytes (4096). Files over 1 MB are fetched from their blob.</li>
+ *     <li>{@code rounds}: the number of times every file is fetched (5)</li>
+ *     <li>{@code changeRate}: the share of the files modified between rounds (0.1)</li>
+ *     <li>{@code concurrency}: the maximum number of fetches in flight (256)</li>
+ *     <li>{@code latency}: the median latency of the simulator, in milliseconds (50)</li>
+ *     <li>{@code latencyP99}: the 99th percentile latency of the simulator, in milliseconds (250)</li>
+ *     <li>{@code rateLimit}: the budget of each credential per window (5000)</li>
+ *     <li>{@code rateLimitWindow}: the time after which budgets are reset, in seconds (3600, as GitHub does). The
+ *     fetchers only pace their requests once the budget gets close to its reserve.</li>
+ *     <li>{@code resolveRef}: whether fetchers resolve their ref to a commit first (false)</li>
+ *     <li>{@code renamedRepositories}: the number of repositories the fetchers know by a former name, and which are
+ *     redirected to (0)</li>
+ * </ul>
+ *
+ * @author GraviteeSource Team
+ */
+public class LoadDriver {
+
+    private final Map<String, String> settings = new HashMap<>();
+
+    private LoadDriver(String[] args) {
+        for (String arg : args) {
+            final int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Settings are expected as name=value, got " + arg);
+            }
+            settings.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadDriver(args).run();
+    }
+
+    private void run() throws Exception {
+        final int fetcherCount = setting("fetchers", 2000);
+        final int repositoryCount = setting("repositories", 50);
+        final int credentialCount = setting("credentials", 10);
+        final int fileSize = setting("fileSize", 4096);
+        final int rounds = setting("rounds", 5);
+        final double changeRate = Double.parseDouble(settings.getOrDefault("changeRate", "0.1"));
+        final int concurrency = setting("concurrency", 256);
+        final boolean resolveRef = Boolean.parseBoolean(settings.getOrDefault("resolveRef", "false"));
+        final int renamedCount = setting("renamedRepositories", 0);
+
+        final Vertx vertx = Vertx.vertx();
+        final ObjectMapper mapper = new ObjectMapper();
+        final GitHubSimulator simulator = new GitHubSimulator(vertx)
+                .latency(GitHubSimulator.LatencyDistribution.logNormal(setting("latency", 50), setting("latencyP99", 250)))
+                .rateLimit(setting("rateLimit", 5000), TimeUnit.SECONDS.toMillis(setting("rateLimitWindow", 3600)));
+        final int port = simulator.start(0).get();
+        for (int i = 0; i < Math.min(renamedCount, repositoryCount); i++) {
+            simulator.rename("owner", "former-repository-" + i, "owner", "repository-" + i);
+        }
+
+        final List<GitHubFetcher> fetchers = new ArrayList<>(fetcherCount);
+        for (int i = 0; i < fetcherCount; i++) {
+            final String repository = "repository-" + (i % repositoryCount);
+            final String filepath = "/docs/page-" + i + ".md";
+            simulator.repository("owner", repository).file(filepath, fileSize);
+
+            final GitHubFetcherConfiguration configuration = new GitHubFetcherConfiguration();
+            configuration.setGithubUrl("http://localhost:" + port);
+            configuration.setOwner("owner");
+            configuration.setRepository(i % repositoryCount < renamedCount ? "former-" + repository : repository);
+            configuration.setFilepath(filepath);
+            configuration.setBranchOrTag("master");
+            configuration.setUsername("user-" + (i % credentialCount));
+            configuration.setPersonalAccessToken("token-" + (i % credentialCount));
+            configuration.setResolveRef(resolveRef);
+
+            final GitHubFetcher fetcher = new GitHubFetcher(configuration);
+            ReflectionTestUtils.setField(fetcher, "vertx", vertx);
+            ReflectionTestUtils.setField(fetcher, "mapper", mapper);
+            ReflectionTestUtils.setField(fetcher, "httpClientTimeout", 30_000);
+            fetchers.add(fetcher);
+        }
+
+        System.out.printf("%d fetchers, %d repositories, %d credentials, %d bytes files, %d in flight%n",
+                fetcherCount, repositoryCount, credentialCount, fileSize, concurrency);
+
+        final long[] all = new long[fetcherCount * rounds];
+        int errors = 0;
+        long totalNanos = 0;
+        for (int round = 0; round < rounds; round++) {
+            if (round > 0) {
+                final int changed = (int) (fetcherCount * changeRate);
+                for (int i = 0; i < changed; i++) {
+                    final int index = (round * 7919 + i) % fetcherCount;
+                    simulator.repository("owner", "repository-" + (index % repositoryCount))
+                            .file("/docs/page-" + index + ".md", fileSize + round);
+                }
+            }
+
+            final long requestsBefore = simulator.getRequests();
+            final long[] latencies = new long[fetcherCount];
+            final AtomicInteger failures = new AtomicInteger();
+            final long start = System.nanoTime();
+            runRound(fetchers, concurrency, latencies, failures);
+            final long elapsed = System.nanoTime() - start;
+
+            totalNanos += elapsed;
+            errors += failures.get();
+            System.arraycopy(latencies, 0, all, round * fetcherCount, fetcherCount);
+            System.out.printf("Round %d: %s, %d requests to GitHub, %d errors%n", round + 1,
+                    summary(latencies, elapsed), simulator.getRequests() - requestsBefore, failures.get());
+        }
+
+        System.out.printf("Total: %s, %d errors%n", summary(all, totalNanos), errors);
+        System.out.printf("Responses: %d x 200, %d x 304, %d x 301, %d x 403, %d x 404%n",
+                simulator.getRequests(200), simulator.getRequests(304), simulator.getRequests(301),
+                simulator.getRequests(403), simulator.getRequests(404));
+        final Map<String, Long> consumption = simulator.getRateLimitConsumption();
+        System.out.printf("Rate limit consumed: %d in total, by credential %s%n",
+                consumption.values().stream().mapToLong(Long::longValue).sum(), consumption);
+
+        simulator.stop().get();
+        vertx.close();
+    }
+
+    private static void runRound(List<GitHubFetcher> fetchers, int concurrency, long[] latencies,
+                                 AtomicInteger failures) throws InterruptedException {
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(fetchers.size());
+        for (int i = 0; i < fetchers.size(); i++) {
+            final int index = i;
+            inFlight.acquire();
+            final long start = System.nanoTime();
+            fetchers.get(i).fetchAsync().whenComplete((resource, throwable) -> {
+                latencies[index] = System.nanoTime() - start;
+                if (throwable != null) {
+                    failures.incrementAndGet();
+                } else {
+                    drain(resource.getContent());
+                }
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    private static void drain(InputStream content) {
+        if (content == null) {
+            return;
+        }
+        try (InputStream stream = content) {
+            final byte[] chunk = new byte[8192];
+            while (stream.read(chunk) >= 0) {
+                // Read the whole content, as a consumer would
+            }
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    private static String summary(long[] latencies, long elapsedNanos) {
+        final long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return String.format("%.0f fetches/s, latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+                sorted.length / (elapsedNanos / 1e9), millis(sorted, 50), millis(sorted, 90), millis(sorted, 99),
+                sorted[sorted.length - 1] / 1e6);
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+        return sorted[Math.max(0, (int) Math.ceil(percentile / 100 * sorted.length) - 1)] / 1e6;
+    }
+
+    private int setting(String name, int defaultValue) {
+        return Integer.parseInt(settings.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+}